@@ -0,0 +1,90 @@
+package dev.server;
+
+import ch.qos.logback.classic.Level;
+import dev.common.models.Funko;
+import dev.server.database.models.Modelo;
+import dev.server.services.cache.FunkosCache;
+import dev.server.services.cache.FunkosCacheImpl;
+import dev.server.services.cache.OffHeapFunkosCache;
+import dev.server.services.cache.TinyLfuFunkosCache;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.LocalDate;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(8)
+public class CacheContentionBenchmark {
+
+    private static final int CAPACITY = 256;
+    private static final int KEYS = 1024;
+
+    @Param({"lru", "tinylfu", "offheap"})
+    private String type;
+
+    private FunkosCache<UUID, Funko> cache;
+    private Funko[] funkos;
+
+    @Setup
+    public void setUp() {
+        // Los logs por operación de la cache medirían el appender, no la cache
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+
+        cache = switch (type) {
+            case "lru" -> new FunkosCacheImpl(CAPACITY);
+            case "tinylfu" -> new TinyLfuFunkosCache(CAPACITY);
+            default -> new OffHeapFunkosCache(CAPACITY);
+        };
+        funkos = new Funko[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            funkos[i] = new Funko(UUID.randomUUID(), "Funko " + i, Modelo.values()[i % Modelo.values().length], i, LocalDate.of(2023, 1, 1));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        cache.shutdown();
+    }
+
+    // Distribución sesgada: la mitad de las lecturas van al primer 1/16 de las claves
+    private Funko next() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return funkos[random.nextBoolean() ? random.nextInt(KEYS / 16) : random.nextInt(KEYS)];
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Lookups {
+        public long hits;
+        public long misses;
+    }
+
+    @Benchmark
+    public Funko readThrough(Lookups lookups) {
+        Funko funko = next();
+        Funko cached = cache.get(funko.codigo()).block();
+        if (cached == null) {
+            lookups.misses++;
+            cache.put(funko.codigo(), funko).block();
+            return funko;
+        }
+        lookups.hits++;
+        return cached;
+    }
+}
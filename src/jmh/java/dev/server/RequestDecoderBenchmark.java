@@ -0,0 +1,59 @@
+package dev.server;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import dev.common.models.Funko;
+import dev.common.models.Request;
+import dev.common.utils.LocalDateAdapter;
+import dev.common.utils.LocalDateTimeAdapter;
+import dev.common.utils.UuidAdapter;
+import dev.server.database.models.Modelo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RequestDecoderBenchmark {
+
+    private final Gson gson = new GsonBuilder()
+            .registerTypeAdapter(LocalDate.class, new LocalDateAdapter())
+            .registerTypeAdapter(LocalDateTime.class, new LocalDateTimeAdapter())
+            .registerTypeAdapter(UUID.class, new UuidAdapter()).create();
+
+    @Param({"POST", "UPDATE"})
+    private Request.Type type;
+
+    private RequestDecoder decoder;
+    private String line;
+
+    @Setup
+    public void setUp() {
+        decoder = new RequestDecoder(gson, t -> Funko.class);
+        Funko funko = new Funko(UUID.randomUUID(), "Funko benchmark", Modelo.MARVEL, 19.99, LocalDate.of(2023, 1, 1));
+        line = gson.toJson(new Request<>(type, funko, "token", LocalDateTime.now().toString(), 1L));
+    }
+
+    @Benchmark
+    public Funko doubleParse() {
+        Request<?> request = gson.fromJson(line, Request.class);
+        return gson.fromJson(gson.toJson(request.content()), Funko.class);
+    }
+
+    @Benchmark
+    public Object singlePass() throws IOException {
+        return decoder.decode(line).content();
+    }
+}
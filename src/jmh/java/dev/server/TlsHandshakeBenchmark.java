@@ -0,0 +1,89 @@
+package dev.server;
+
+import dev.common.utils.TlsContexts;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class TlsHandshakeBenchmark {
+
+    private static final String[] PROTOCOLS = {"TLSv1.3"};
+    private static final String[] CIPHER_SUITES = {"TLS_AES_128_GCM_SHA256"};
+
+    private SSLServerSocket serverSocket;
+    private SSLContext clientContext;
+
+    @Setup
+    public void setUp() throws IOException {
+
+        SSLContext serverContext = TlsContexts.server("cert/server_keystore.p12", "87654321", 20480, 86400);
+        clientContext = TlsContexts.client("cert/client_keystore.p12", "87654321", 16, 86400);
+
+        serverSocket = (SSLServerSocket) serverContext.getServerSocketFactory().createServerSocket(0);
+        serverSocket.setEnabledProtocols(PROTOCOLS);
+        serverSocket.setEnabledCipherSuites(CIPHER_SUITES);
+
+        Thread acceptor = new Thread(this::accept, "tls-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        serverSocket.close();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try (SSLSocket socket = (SSLSocket) serverSocket.accept()) {
+                socket.setTcpNoDelay(true);
+                socket.startHandshake();
+                socket.getOutputStream().write(1);
+                socket.getOutputStream().flush();
+            } catch (IOException ignored) {
+                // el cliente cierra en cuanto recibe el byte
+            }
+        }
+    }
+
+    private SSLSocket handshake() throws IOException {
+        SSLSocket socket = (SSLSocket) clientContext.getSocketFactory().createSocket("localhost", serverSocket.getLocalPort());
+        socket.setTcpNoDelay(true);
+        socket.setEnabledProtocols(PROTOCOLS);
+        socket.setEnabledCipherSuites(CIPHER_SUITES);
+        socket.startHandshake();
+        // Leer el byte del servidor procesa tambien el ticket de sesion que envia tras el handshake
+        socket.getInputStream().read();
+        return socket;
+    }
+
+    @Benchmark
+    public int fullHandshake() throws IOException {
+        try (SSLSocket socket = handshake()) {
+            socket.getSession().invalidate();
+            return socket.getSession().getPacketBufferSize();
+        }
+    }
+
+    @Benchmark
+    public int resumedHandshake() throws IOException {
+        try (SSLSocket socket = handshake()) {
+            return socket.getSession().getPacketBufferSize();
+        }
+    }
+}
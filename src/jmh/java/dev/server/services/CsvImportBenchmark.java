@@ -0,0 +1,68 @@
+package dev.server.services;
+
+import dev.common.models.Funko;
+import dev.server.database.models.Modelo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CsvImportBenchmark {
+
+    @Param({"1000000"})
+    private int rows;
+
+    private Path file;
+
+    @Setup
+    public void setUp() throws IOException {
+        file = Files.createTempFile("funkos", ".csv");
+        Modelo[] modelos = Modelo.values();
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            writer.write("COD,NOMBRE,MODELO,PRECIO,FECHA_LANZAMIENTO\n");
+            for (int i = 0; i < rows; i++) {
+                writer.write(UUID.randomUUID() + ",Funko " + i + "," + modelos[i % modelos.length] + "," + (i % 5000) / 100.0
+                        + "," + LocalDate.of(2000 + i % 24, 1 + i % 12, 1 + i % 28) + "\n");
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public long readerAndSplit() throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file)) {
+            return reader.lines().skip(1).map(line -> {
+                String[] values = line.split(",");
+                return new Funko(UUID.fromString(values[0].substring(0, 35)), values[1], Modelo.valueOf(values[2]),
+                        Double.parseDouble(values[3]), LocalDate.parse(values[4]));
+            }).count();
+        }
+    }
+
+    @Benchmark
+    public long mappedParallel() {
+        return new FunkoCsvParser().parse(file, (error, offset) -> {
+        }).count().block();
+    }
+}
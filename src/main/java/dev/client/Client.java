@@ -2,17 +2,24 @@ package dev.client;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import com.google.gson.reflect.TypeToken;
 import dev.common.models.*;
 import dev.common.utils.LocalDateAdapter;
 import dev.common.utils.LocalDateTimeAdapter;
+import dev.common.utils.TlsContexts;
 import dev.common.utils.UuidAdapter;
 import dev.server.Server;
 import dev.server.database.models.Modelo;
 import org.apache.ibatis.logging.Log;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
 
+import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLServerSocket;
 import javax.net.ssl.SSLServerSocketFactory;
 import javax.net.ssl.SSLSocket;
@@ -22,19 +29,28 @@ import java.lang.reflect.Type;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class Client {
 
     private static String HOST = "localhost";
     private static int PORT = 3000;
     private static final Logger logger = LoggerFactory.getLogger(Client.class);
+    private static SSLContext sslContext;
     private final Gson gson = new GsonBuilder()
             .registerTypeAdapter(LocalDate.class, new LocalDateAdapter())
             .registerTypeAdapter(LocalDateTime.class, new LocalDateTimeAdapter())
             .registerTypeAdapter(UUID.class, new UuidAdapter()).create();
+    private final AtomicLong requestIds = new AtomicLong(0);
+    private final Map<Long, CompletableFuture<JsonElement>> pendingResponses = new ConcurrentHashMap<>();
+    private final Map<Long, FluxSink<Funko>> pendingStreams = new ConcurrentHashMap<>();
     private SSLSocket socket;
     private PrintWriter out;
     private BufferedReader in;
+    private Thread reader;
     private String token;
 
     public static void main(String[] args) throws IOException {
@@ -74,16 +90,45 @@ public class Client {
         Properties props = loadProperties();
 
         logger.debug("Cargando fichero de propiedades");
-        System.setProperty("javax.net.ssl.trustStore", props.getProperty("keyFile"));
-        System.setProperty("javax.net.ssl.trustStorePassword", props.getProperty("keyPassword"));
+        synchronized (Client.class) {
+            if (sslContext == null) {
+                sslContext = TlsContexts.client(props.getProperty("keyFile"), props.getProperty("keyPassword"),
+                        Integer.parseInt(props.getProperty("tls.sessionCache", "16")),
+                        Integer.parseInt(props.getProperty("tls.sessionTimeout", "86400")));
+            }
+        }
+
+        connect();
+
+    }
+
+    private void connect() throws IOException {
 
-        SSLSocketFactory clientFactory = (SSLSocketFactory) SSLSocketFactory.getDefault();
-        socket = (SSLSocket) clientFactory.createSocket(HOST, PORT);
+        logger.debug("Conectando a" + HOST + ":" + PORT);
+
+        // Todas las conexiones comparten el contexto para poder reanudar la sesion TLS en las reconexiones
+        socket = (SSLSocket) sslContext.getSocketFactory().createSocket(HOST, PORT);
 
         socket.setEnabledCipherSuites(new String[]{"TLS_AES_128_GCM_SHA256"});
         socket.setEnabledProtocols(new String[]{"TLSv1.3"});
 
-        logger.debug("Conectando a" + HOST + ":" + PORT);
+        long start = System.nanoTime();
+        socket.startHandshake();
+        logger.info("Handshake TLS completado en {} ms", (System.nanoTime() - start) / 1_000_000.0);
+
+    }
+
+    public void reconnect() throws IOException {
+
+        closeConnection();
+        try {
+            reader.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        connect();
+        openConnection();
+        token = sendLoginRequest();
 
     }
 
@@ -93,13 +138,123 @@ public class Client {
         in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
         logger.info("Conexion establecido con " + HOST + ":" + PORT);
 
+        reader = new Thread(this::readResponses, "client-reader");
+        reader.setDaemon(true);
+        reader.start();
+
     }
 
     public void closeConnection() throws IOException {
 
+        socket.close();
         in.close();
         out.close();
-        socket.close();
+
+    }
+
+    private void readResponses() {
+
+        try {
+            String json;
+            while ((json = in.readLine()) != null) {
+                // Una respuesta mal formada no puede dejar sin lector al resto de peticiones
+                try {
+                    onResponse(json);
+                } catch (RuntimeException e) {
+                    logger.warn("Respuesta no valida descartada: {} ({})", json, e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            logger.debug("Conexion cerrada: {}", e.getMessage());
+        } finally {
+            IOException closed = new IOException("Conexion cerrada con el servidor");
+            pendingResponses.values().forEach(pending -> pending.completeExceptionally(closed));
+            pendingResponses.clear();
+            pendingStreams.values().forEach(sink -> sink.error(closed));
+            pendingStreams.clear();
+        }
+
+    }
+
+    private void onResponse(String json) {
+        JsonObject response = JsonParser.parseString(json).getAsJsonObject();
+        JsonElement id = response.get("id");
+        if (id != null) {
+            // Un solo get: el envío se puede cancelar desde otro hilo en cualquier momento
+            FluxSink<Funko> sink = pendingStreams.get(id.getAsLong());
+            if (sink != null) {
+                onStreamResponse(id.getAsLong(), sink, response);
+                return;
+            }
+        }
+        CompletableFuture<JsonElement> pending = id == null ? null : pendingResponses.remove(id.getAsLong());
+        if (pending == null && isStreamResponse(response)) {
+            logger.debug("Descartando respuesta de un envío cancelado: {}", json);
+        } else if (pending == null) {
+            logger.warn("Respuesta sin peticion asociada: {}", json);
+        } else {
+            pending.complete(response);
+        }
+    }
+
+    private boolean isStreamResponse(JsonObject response) {
+        String status = response.get("status").getAsString();
+        return status.equals(Response.Status.CHUNK.name()) || status.equals(Response.Status.END.name());
+    }
+
+    private void onStreamResponse(long id, FluxSink<Funko> sink, JsonObject response) {
+
+        Response.Status status = Response.Status.valueOf(response.get("status").getAsString());
+
+        if (status == Response.Status.CHUNK) {
+            sink.next(gson.fromJson(response.get("content"), Funko.class));
+            return;
+        }
+
+        pendingStreams.remove(id);
+        if (status == Response.Status.END) {
+            sink.complete();
+        } else {
+            sink.error(new IOException("Error en el envío " + id + ": " + response.get("content")));
+        }
+
+    }
+
+    public <T> Flux<Funko> streamRequest(T content, Request.Type type) {
+
+        return Flux.create(sink -> {
+            long id = requestIds.incrementAndGet();
+
+            pendingStreams.put(id, sink);
+            sink.onCancel(() -> {
+                if (pendingStreams.remove(id) != null) {
+                    send(new Request<>(Request.Type.CANCEL, null, token, LocalDateTime.now().toString(), id));
+                }
+            });
+
+            send(new Request<>(type, content, token, LocalDateTime.now().toString(), id));
+
+            // El servidor envía una primera ventana de funkos; cada petición de la demanda amplía el crédito
+            sink.onRequest(n -> send(new Request<>(Request.Type.DEMAND, n, token, LocalDateTime.now().toString(), id)));
+        }, FluxSink.OverflowStrategy.BUFFER);
+
+    }
+
+    private void send(Request<?> request) {
+        synchronized (out) {
+            out.println(gson.toJson(request));
+        }
+    }
+
+    private <T, R> CompletableFuture<Response<R>> sendAsync(T content, Request.Type type, Type responseType) {
+
+        long id = requestIds.incrementAndGet();
+        CompletableFuture<JsonElement> pending = new CompletableFuture<>();
+        pendingResponses.put(id, pending);
+
+        send(new Request<>(type, content, token, LocalDateTime.now().toString(), id));
+
+        return pending.thenApply(json -> gson.fromJson(json, responseType));
 
     }
 
@@ -115,10 +270,29 @@ public class Client {
 
         logger.info(logMessage, allFunkos.content());
 
-        Response<Funko> funkoById = sendRequest(UUID.fromString("3b6c6f58-79b9-434b-82ab-01a2d6e4434"), Request.Type.GETBYID);
+        Type pageType = new TypeToken<Response<Page<Funko>>>() {
+        }.getType();
+        int pages = 0;
+        int paged = 0;
+        String token = null;
+        do {
+            Page<Funko> page = await(this.<PageRequest, Page<Funko>>sendAsync(new PageRequest(token, 20), Request.Type.GETPAGE, pageType)).content();
+            pages++;
+            paged += page.items().size();
+            token = page.next();
+        } while (token != null);
+
+        logger.info("Funkos recibidos en {} paginas: {}", pages, paged);
+
+        UUID knownFunko = UUID.fromString("3b6c6f58-79b9-434b-82ab-01a2d6e4434");
+        Response<Funko> funkoById = sendRequest(knownFunko, Request.Type.GETBYID);
 
         logger.info(logMessage, funkoById.content());
 
+        Response<List<Funko>> funkosByIds = sendListRequest(List.of(knownFunko, UUID.randomUUID()), Request.Type.GETBYIDS);
+
+        logger.info(logMessage, funkosByIds.content());
+
         Response<List<Funko>> funkoByModel = sendListRequest(Modelo.DISNEY, Request.Type.GETBYMODELO);
 
         logger.info(logMessage, funkoByModel.content());
@@ -126,6 +300,27 @@ public class Client {
         Response<List<Funko>> funkoByYear = sendListRequest(2022, Request.Type.GETBYYEAR);
 
         logger.info(logMessage, funkoByYear.content());
+
+        List<CompletableFuture<Response<List<Funko>>>> funkosByModel = Arrays.stream(Modelo.values())
+                .map(modelo -> this.<Modelo, List<Funko>>sendAsync(modelo, Request.Type.GETBYMODELO, new TypeToken<Response<List<Funko>>>() {
+                }.getType()))
+                .toList();
+
+        funkosByModel.forEach(response -> logger.info(logMessage, response.join().content()));
+
+        Long streamed = streamRequest(null, Request.Type.STREAMALL)
+                .limitRate(8)
+                .doOnNext(funko -> logger.debug(logMessage, funko))
+                .count()
+                .block();
+
+        logger.info("Funkos recibidos por streaming: {}", streamed);
+
+        streamRequest(Modelo.MARVEL, Request.Type.STREAMBYMODELO)
+                .take(3)
+                .doOnNext(funko -> logger.info(logMessage, funko))
+                .blockLast();
+
         UUID funkoUuid = UUID.randomUUID();
         Response<Funko> insertedFunko = sendRequest(new Funko(funkoUuid, "FunkoInsertado", Modelo.DISNEY, 10.0, LocalDate.now()), Request.Type.POST);
 
@@ -139,6 +334,25 @@ public class Client {
 
         logger.info(logMessage, deletedFunko.content());
 
+        List<Funko> bulk = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            bulk.add(new Funko(UUID.randomUUID(), "FunkoMasivo " + i, Modelo.values()[i % Modelo.values().length], 10.0 + i, LocalDate.now()));
+        }
+        // El último repite un código y aparece como fallido en el resumen
+        bulk.add(bulk.get(0));
+        logger.info("Insercion masiva: {}", sendRequest(bulk, Request.Type.POSTALL).content());
+
+        List<Funko> bulkUpdate = bulk.stream().map(f -> new Funko(f.codigo(), f.nombre() + " actualizado", f.modelo(), f.precio() * 2, f.fechaLanzamiento())).toList();
+        logger.info("Actualizacion masiva: {}", sendRequest(bulkUpdate, Request.Type.UPDATEALL).content());
+
+        bulk.stream().distinct().forEach(f -> sendRequest(f, Request.Type.DELETE));
+
+        reconnect();
+
+        logger.info(logMessage, sendRequest(knownFunko, Request.Type.GETBYID).content());
+
+        logger.info("Estadisticas de la cache: {}", sendRequest(null, Request.Type.STATS).content());
+
         closeConnection();
 
     }
@@ -146,10 +360,7 @@ public class Client {
     public String sendLoginRequest() throws IOException {
 
         Login request = new Login("juan", "juan1234");
-        out.println(gson.toJson(new Request<>(Request.Type.LOGIN, request, token, LocalDateTime.now().toString())));
-        String json = in.readLine();
-        Response<String> response = gson.fromJson(json, new TypeToken<Response<String>>() {
-        }.getType());
+        Response<String> response = sendRequest(request, Request.Type.LOGIN);
         if (response == null) {
             logger.error("Error al enviar la petición de login");
             return null;
@@ -160,27 +371,23 @@ public class Client {
 
 
     private <T, R> Response<R> sendRequest(T content, Request.Type type) {
-        out.println(gson.toJson(new Request<>(type, content, token, LocalDateTime.now().toString())));
-        try {
-            Type responseType = new TypeToken<Response<R>>() {
-            }.getType();
-            String json = in.readLine();
-            return gson.fromJson(json, responseType);
-        } catch (IOException e) {
-            logger.error("Error: {}", e.getMessage());
-        }
-        return null;
+        Type responseType = new TypeToken<Response<R>>() {
+        }.getType();
+        return await(sendAsync(content, type, responseType));
     }
 
 
     private <T> Response<List<Funko>> sendListRequest(T content, Request.Type type) {
-        out.println(gson.toJson(new Request<>(type, content, token, LocalDateTime.now().toString())));
+        Type responseType = new TypeToken<Response<List<Funko>>>() {
+        }.getType();
+        return await(sendAsync(content, type, responseType));
+    }
+
+    private <R> Response<R> await(CompletableFuture<Response<R>> response) {
         try {
-            Type responseType = new TypeToken<Response<List<Funko>>>() {
-            }.getType();
-            return gson.fromJson(in.readLine(), responseType);
-        } catch (IOException e) {
-            logger.error("Error: {}", e.getMessage());
+            return response.join();
+        } catch (CompletionException e) {
+            logger.error("Error: {}", e.getCause().getMessage());
         }
         return null;
     }
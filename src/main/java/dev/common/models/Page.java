@@ -0,0 +1,7 @@
+package dev.common.models;
+
+import java.util.List;
+
+// Una página de resultados; next es el token para pedir la siguiente o null si no hay más
+public record Page<T>(List<T> items, String next) {
+}
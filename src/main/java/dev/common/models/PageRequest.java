@@ -0,0 +1,5 @@
+package dev.common.models;
+
+// token es el next de la página anterior, o null para pedir la primera
+public record PageRequest(String token, int size) {
+}
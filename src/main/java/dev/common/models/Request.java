@@ -1,7 +1,12 @@
 package dev.common.models;
 
-public record Request<T>(Type type, T content, String token, String createdAt) {
+public record Request<T>(Type type, T content, String token, String createdAt, Long id) {
+
+    public Request(Type type, T content, String token, String createdAt) {
+        this(type, content, token, createdAt, null);
+    }
+
     public enum Type {
-        LOGIN, FECHA, UUID, SALIR, OTRO, GETALL, GETBYID, GETBYUUID, POST, UPDATE, DELETE, DELETEALL, GETBYMODELO, GETBYYEAR
+        LOGIN, FECHA, UUID, SALIR, OTRO, GETALL, GETPAGE, GETBYID, GETBYIDS, GETBYUUID, POST, POSTALL, UPDATE, UPDATEALL, DELETE, DELETEALL, GETBYMODELO, GETBYYEAR, STREAMALL, STREAMBYMODELO, DEMAND, CANCEL, STATS
     }
 }
\ No newline at end of file
@@ -5,11 +5,18 @@ import dev.common.utils.LocalDateTimeAdapter;
 
 import java.time.LocalDateTime;
 
-public record Response<T>(Status status, T content, String createdAt) {
+public record Response<T>(Status status, T content, String createdAt, Long id) {
 
+    public Response(Status status, T content, String createdAt) {
+        this(status, content, createdAt, null);
+    }
+
+    public Response<T> withId(Long id) {
+        return new Response<>(status, content, createdAt, id);
+    }
 
     public enum Status {
-        OK, ERROR, UNAUTHORIZED, EXIT, TOKEN
+        OK, ERROR, UNAUTHORIZED, EXIT, TOKEN, CHUNK, END
     }
 
 
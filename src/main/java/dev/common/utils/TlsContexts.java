@@ -0,0 +1,59 @@
+package dev.common.utils;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+
+
+public class TlsContexts {
+
+    private TlsContexts() {
+    }
+
+    public static SSLContext server(String keyFile, String password, int sessionCacheSize, int sessionTimeout) throws IOException {
+        try {
+            KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            keyManagers.init(load(keyFile, password), password.toCharArray());
+
+            SSLContext context = SSLContext.getInstance("TLSv1.3");
+            context.init(keyManagers.getKeyManagers(), null, null);
+            configure(context.getServerSessionContext(), sessionCacheSize, sessionTimeout);
+            return context;
+        } catch (GeneralSecurityException e) {
+            throw new IOException("No se ha podido crear el contexto TLS del servidor", e);
+        }
+    }
+
+    public static SSLContext client(String trustFile, String password, int sessionCacheSize, int sessionTimeout) throws IOException {
+        try {
+            TrustManagerFactory trustManagers = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            trustManagers.init(load(trustFile, password));
+
+            SSLContext context = SSLContext.getInstance("TLSv1.3");
+            context.init(null, trustManagers.getTrustManagers(), null);
+            configure(context.getClientSessionContext(), sessionCacheSize, sessionTimeout);
+            return context;
+        } catch (GeneralSecurityException e) {
+            throw new IOException("No se ha podido crear el contexto TLS del cliente", e);
+        }
+    }
+
+    private static KeyStore load(String file, String password) throws IOException, GeneralSecurityException {
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        try (InputStream in = new FileInputStream(file)) {
+            keyStore.load(in, password.toCharArray());
+        }
+        return keyStore;
+    }
+
+    private static void configure(SSLSessionContext sessions, int cacheSize, int timeout) {
+        sessions.setSessionCacheSize(cacheSize);
+        sessions.setSessionTimeout(timeout);
+    }
+}
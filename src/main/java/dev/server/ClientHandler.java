@@ -3,6 +3,8 @@ package dev.server;
 import com.auth0.jwt.interfaces.DecodedJWT;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
 import dev.common.models.*;
 import dev.common.utils.LocalDateAdapter;
 import dev.common.utils.LocalDateTimeAdapter;
@@ -12,58 +14,76 @@ import dev.server.annotations.RequestBody;
 import dev.server.annotations.RequestHandler;
 import dev.server.annotations.RequestToken;
 import dev.server.database.models.Modelo;
-import dev.server.repositories.FunkosReactiveRepoImpl;
+import dev.server.exceptions.PaginaNoValida;
 import dev.server.repositories.UsersRepository;
-import dev.server.services.FunkoServiceImpl;
+import dev.server.repositories.WriteResult;
+import dev.server.services.BulkWriteSummary;
+import dev.server.services.FunkoService;
 import dev.server.services.TokenService;
-import dev.server.services.cache.FunkosCacheImpl;
-import dev.server.services.database.DatabaseManager;
 import org.mindrot.jbcrypt.BCrypt;
+import org.reactivestreams.Subscription;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.SignalType;
 
 import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
-import java.lang.reflect.Method;
-import java.lang.reflect.Parameter;
+import java.lang.invoke.MethodHandles;
 import java.net.Socket;
 import java.sql.SQLException;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
 
-public class ClientHandler extends Thread {
+public class ClientHandler implements Runnable, Closeable {
 
     private static Logger logger = LoggerFactory.getLogger(ClientHandler.class);
-    private final Gson gson = new GsonBuilder()
+    private static final Gson gson = new GsonBuilder()
             .registerTypeAdapter(LocalDate.class, new LocalDateAdapter())
             .registerTypeAdapter(LocalDateTime.class, new LocalDateTimeAdapter())
             .registerTypeAdapter(UUID.class, new UuidAdapter()).create();
+    private static final HandlerTable handlers = HandlerTable.build(ClientHandler.class, MethodHandles.lookup(), gson);
+    private static final RequestDecoder decoder = new RequestDecoder(gson, type -> type == Request.Type.DEMAND ? Long.class : handlers.bodyType(type));
     private final long clientNumber;
     private final Socket socket;
     private TokenService tokenService = TokenService.getInstance();
-    private final FunkoServiceImpl funkoService;
-
-    private static Map<Request.Type, Method> handlers = new HashMap<>();
+    private final FunkoService funkoService;
+    private final Executor requestExecutor;
+    private final Map<Long, StreamSubscriber> streams = new ConcurrentHashMap<>();
+    private final Map<Long, Long> pendingDemand = new ConcurrentHashMap<>();
 
     BufferedReader in;
     PrintWriter out;
 
 
-    public ClientHandler(Socket socket, long clientNumber) {
+    public ClientHandler(Socket socket, long clientNumber, FunkoService funkoService, Executor requestExecutor) {
 
         this.clientNumber = clientNumber;
         this.socket = socket;
-        funkoService = new FunkoServiceImpl(FunkosReactiveRepoImpl.getInstance(DatabaseManager.getInstance()), new FunkosCacheImpl());
+        this.funkoService = funkoService;
+        this.requestExecutor = requestExecutor;
+
+    }
 
+    public ClientHandler(long clientNumber, FunkoService funkoService, Executor requestExecutor) {
+        this(null, clientNumber, funkoService, requestExecutor);
     }
 
-    public void start() {
+    @Override
+    public void run() {
 
-        registerHandlers(this);
         String clientInput;
+        Semaphore inFlight = new Semaphore(Server.MAX_IN_FLIGHT);
 
         try {
 
@@ -71,16 +91,25 @@ public class ClientHandler extends Thread {
 
 
             while ((clientInput = in.readLine()) != null) {
-                logger.debug("request " + clientInput);
-                Response<?> response = handleRequest(clientInput);
-                String json = gson.toJson(response);
-                out.println(json);
+                inFlight.acquire();
+                try {
+                    dispatch(clientInput, this::write).whenComplete((res, e) -> inFlight.release());
+                } catch (Exception e) {
+                    inFlight.release();
+                    throw e;
+                }
             }
 
         } catch (IOException | NoSuchMethodException e) {
             logger.error("Error", e);
         } catch (Exception e) {
             logger.error("Error al procesar la petición", e);
+        } finally {
+            try {
+                close();
+            } catch (IOException e) {
+                logger.error("Error al cerrar la conexión con el cliente {}", clientNumber, e);
+            }
         }
 
     }
@@ -94,64 +123,156 @@ public class ClientHandler extends Thread {
 
     }
 
-    private void closeConnection() throws IOException {
+    @Override
+    public void close() throws IOException {
+
+        logger.info("Cerrando conexión con el cliente {}", clientNumber);
 
-        in.close();
-        out.close();
-        socket.close();
+        streams.values().forEach(BaseSubscriber::cancel);
+        pendingDemand.clear();
+
+        if (in != null) {
+            in.close();
+        }
+        if (out != null) {
+            out.close();
+        }
+        if (socket != null) {
+            socket.close();
+        }
 
     }
 
-    public static void registerHandlers(Object obj) {
-        Class<?> clazz = obj.getClass();
-        Method[] methods = clazz.getDeclaredMethods();
+    public static int registeredHandlers() {
+        return handlers.size();
+    }
 
-        for (Method method : methods) {
-//             && method.getParameterCount() == 1
-            if (method.isAnnotationPresent(RequestHandler.class)) {
-                if (method.getReturnType() != Response.class) {
-                    String s = "El método " + method.getName() + " de " + clazz.getName() + " debe devolver una respuesta";
-                    throw new IllegalArgumentException(s);
-                }
-                RequestHandler annotation = method.getAnnotation(RequestHandler.class);
-                Request.Type requestType = annotation.value();
-                handlers.put(requestType, method);
+    private synchronized void write(String json) {
+        out.println(json);
+    }
+
+    public CompletableFuture<Void> dispatch(String clientInput, Consumer<String> writer) throws Exception {
+
+        logger.debug("request " + clientInput);
+        Request<?> requestObj;
+        try {
+            requestObj = decoder.decode(clientInput);
+        } catch (IOException | RuntimeException e) {
+            // Una línea mal formada solo falla ella: las demás peticiones de la conexión siguen en curso
+            logger.warn("Petición mal formada del cliente {}: {}", clientNumber, e.getMessage());
+            writer.accept(gson.toJson(new Response<>(Response.Status.ERROR, "Petición mal formada", LocalDateTime.now().toString()).withId(requestId(clientInput))));
+            return CompletableFuture.completedFuture(null);
+        }
+
+        if (requestObj.type() == Request.Type.DEMAND || requestObj.type() == Request.Type.CANCEL) {
+            onDemand(requestObj);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        if (requestObj.id() == null) {
+            respond(requestObj, handleRequest(requestObj), writer).join();
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return CompletableFuture.supplyAsync(() -> handleMultiplexed(requestObj), requestExecutor)
+                .thenCompose(result -> respond(requestObj, result, writer));
+
+    }
+
+    private static Long requestId(String clientInput) {
+        try {
+            JsonElement id = JsonParser.parseString(clientInput).getAsJsonObject().get("id");
+            return id == null || id.isJsonNull() ? null : id.getAsLong();
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private Object handleMultiplexed(Request<?> requestObj) {
+        try {
+            return handleRequest(requestObj);
+        } catch (Exception e) {
+            logger.error("Error al procesar la petición {} del cliente {}", requestObj.id(), clientNumber, e);
+            return new Response<>(Response.Status.ERROR, "Error al procesar la petición", LocalDateTime.now().toString());
+        }
+    }
+
+    private CompletableFuture<Void> respond(Request<?> requestObj, Object result, Consumer<String> writer) {
+
+        if (result instanceof Flux<?> flux) {
+            StreamSubscriber subscriber = new StreamSubscriber(requestObj.id(), writer);
+            if (requestObj.id() == null) {
+                flux.subscribe(subscriber);
+                return subscriber.done;
             }
+            // Se registra antes de suscribirse: un Flux que termina en la propia suscripción se retira solo en
+            // hookFinally. El envío deja de contar como petición en curso en cuanto está registrado, porque puede
+            // esperar a una DEMAND que solo se lee si hay hueco para otra petición.
+            streams.put(requestObj.id(), subscriber);
+            applyPendingDemand(requestObj.id(), subscriber);
+            flux.subscribe(subscriber);
+            return CompletableFuture.completedFuture(null);
         }
+
+        writer.accept(gson.toJson(((Response<?>) result).withId(requestObj.id())));
+        return CompletableFuture.completedFuture(null);
+
     }
 
-    public Response<Object> handleRequest(String request) throws Exception {
+    private void onDemand(Request<?> requestObj) {
+
+        Long id = requestObj.id();
+        if (id == null) {
+            return;
+        }
+
+        StreamSubscriber subscriber = streams.get(id);
+
+        if (requestObj.type() == Request.Type.CANCEL) {
+            if (subscriber != null) {
+                subscriber.cancel();
+                streams.remove(id, subscriber);
+            }
+        } else if (requestObj.content() instanceof Number demand && demand.longValue() > 0) {
+            if (subscriber != null) {
+                subscriber.demand(demand.longValue());
+                return;
+            }
+            // La demanda puede llegar antes de que el manejador haya devuelto el Flux
+            logger.debug("Demanda anticipada para el envío {}", id);
+            pendingDemand.merge(id, demand.longValue(), (a, b) -> a + b < 0 ? Long.MAX_VALUE : a + b);
+            subscriber = streams.get(id);
+            if (subscriber != null) {
+                applyPendingDemand(id, subscriber);
+            }
+        }
+
+    }
+
+    private void applyPendingDemand(Long id, StreamSubscriber subscriber) {
+        Long demand = pendingDemand.remove(id);
+        if (demand != null) {
+            subscriber.demand(demand);
+        }
+    }
+
+    public Object handleRequest(Request<?> requestObj) throws Exception {
 
-        Request<?> requestObj = gson.fromJson(request, Request.class);
         logger.debug("Procesando peticion {}", requestObj.type());
-        Method handler = handlers.get(requestObj.type());
+        HandlerTable.Invoker handler = handlers.get(requestObj.type());
 
         if (handler != null) {
-            DecodedJWT token = verifyToken(requestObj.token());
-            if (handler.isAnnotationPresent(Authorized.class) && token == null) {
+            DecodedJWT token = handler.needsToken() ? verifyToken(requestObj.token()) : null;
+            if (handler.authorized() && token == null) {
                 return new Response<>(Response.Status.UNAUTHORIZED, "No autorizado", LocalDateTime.now().toString());
             }
-            Parameter[] parameters = handler.getParameters();
-            List<Object> args = new ArrayList<>();
-            for (Parameter parameter : parameters) {
-                if (parameter.isAnnotationPresent(RequestToken.class)) {
-                    if (!parameter.getType().isAssignableFrom(DecodedJWT.class)) {
-                        throw new IllegalArgumentException("El parámetro " + parameter.getName() + " del método " + handler.getName() + " de la clase " + handler.getDeclaringClass().getName() + " debe ser de tipo DecodedJWT");
-                    }
-                    args.add(token);
-                }
-
-                if (parameter.isAnnotationPresent(RequestBody.class)) {
-
-                    String contentJson = gson.toJson(requestObj.content());
-                    Object methodParameter = gson.fromJson(contentJson, parameter.getType());
-                    if (!parameter.getType().isAssignableFrom(methodParameter.getClass())) {
-                        throw new IllegalArgumentException("El parámetro " + parameter.getName() + " del método " + handler.getName() + " de la clase " + handler.getDeclaringClass().getName() + " debe ser de tipo " + parameter.getType().getName());
-                    }
-                    args.add(methodParameter);
-                }
+            try {
+                return handler.invoke(this, requestObj, token);
+            } catch (Exception | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
             }
-            return (Response<Object>) handler.invoke(this, args.toArray());
         } else {
             logger.error("Request no valida");
             return new Response<>(Response.Status.ERROR, "Request no valida", LocalDateTime.now().toString());
@@ -175,6 +296,8 @@ public class ClientHandler extends Thread {
 
     }
 
+    // GETALL y GETBYMODELO siguen respondiendo con la lista entera en una sola línea, para no cambiar el protocolo de
+    // los clientes que ya los usan; la versión en streaming son STREAMALL y STREAMBYMODELO
     @RequestHandler(value = Request.Type.GETALL)
     @Authorized
     public Response<List<Funko>> getAllFunkos() throws SQLException, IOException {
@@ -185,6 +308,12 @@ public class ClientHandler extends Thread {
 
     }
 
+    @RequestHandler(value = Request.Type.STREAMALL)
+    @Authorized
+    public Flux<Funko> streamAllFunkos() throws SQLException, IOException {
+        return funkoService.findAll();
+    }
+
     @RequestHandler(value = Request.Type.GETBYID)
     @Authorized
     public Response<Funko> getFunkoById(@RequestBody UUID id) throws SQLException, IOException {
@@ -195,6 +324,31 @@ public class ClientHandler extends Thread {
 
     }
 
+    @RequestHandler(value = Request.Type.GETBYIDS)
+    @Authorized
+    public Response<?> getFunkosByIds(@RequestBody UUID[] ids) throws SQLException, IOException {
+        if (ids == null || ids.length == 0) {
+            return new Response<>(Response.Status.ERROR, "La peticion no contiene codigos", LocalDateTime.now().toString());
+        }
+
+        List<Funko> funkos = funkoService.findAllById(Arrays.asList(ids)).collectList().block();
+
+        return new Response<>(Response.Status.OK, funkos, LocalDateTime.now().toString());
+
+    }
+
+    @RequestHandler(value = Request.Type.GETPAGE)
+    @Authorized
+    public Response<?> getFunkosPage(@RequestBody PageRequest request) {
+        PageRequest pageRequest = request == null ? new PageRequest(null, 0) : request;
+        try {
+            Page<Funko> page = funkoService.findPage(pageRequest.token(), pageRequest.size()).block();
+            return new Response<>(Response.Status.OK, page, LocalDateTime.now().toString());
+        } catch (PaginaNoValida e) {
+            return new Response<>(Response.Status.ERROR, e.getMessage(), LocalDateTime.now().toString());
+        }
+    }
+
     @RequestHandler(value = Request.Type.GETBYYEAR)
     @Authorized
     public Response<List<Funko>> getFunkoByYear(@RequestBody Integer year) throws SQLException, IOException {
@@ -208,11 +362,16 @@ public class ClientHandler extends Thread {
     @RequestHandler(value = Request.Type.GETBYMODELO)
     @Authorized
     public Response<List<Funko>> getByModelo(@RequestBody Modelo modelo) throws IOException, SQLException {
-        Map<Modelo, List<Funko>> map = funkoService.groupedByModel().block();
-        List<Funko> funkos = map.get(modelo);
+        List<Funko> funkos = funkoService.findByModelo(modelo).collectList().block();
         return new Response<>(Response.Status.OK, funkos, LocalDateTime.now().toString());
     }
 
+    @RequestHandler(value = Request.Type.STREAMBYMODELO)
+    @Authorized
+    public Flux<Funko> streamByModelo(@RequestBody Modelo modelo) throws IOException, SQLException {
+        return funkoService.findByModelo(modelo);
+    }
+
     @RequestHandler(value = Request.Type.POST)
     @Authorized
     public Response<Funko> addFunko(@RequestBody Funko funko) throws IOException, SQLException {
@@ -220,18 +379,24 @@ public class ClientHandler extends Thread {
         return new Response<>(Response.Status.OK, newFunko, LocalDateTime.now().toString());
     }
 
+    @RequestHandler(value = Request.Type.POSTALL)
+    @Authorized
+    public Response<?> addFunkos(@RequestBody Funko[] funkos) {
+        if (funkos == null || funkos.length == 0) {
+            return new Response<>(Response.Status.ERROR, "La peticion no contiene funkos", LocalDateTime.now().toString());
+        }
+        if (Arrays.asList(funkos).contains(null)) {
+            return new Response<>(Response.Status.ERROR, "La peticion contiene funkos vacios", LocalDateTime.now().toString());
+        }
+        List<WriteResult<Funko>> results = funkoService.saveAll(Flux.fromArray(funkos)).collectList().block();
+        return new Response<>(Response.Status.OK, BulkWriteSummary.of(results), LocalDateTime.now().toString());
+    }
+
     @RequestHandler(value = Request.Type.DELETE)
     @Authorized
     public Response<String> deleteFunko(@RequestToken DecodedJWT token, @RequestBody Funko funko) throws IOException, SQLException {
-        final Response<String> unathorizedResponse = new Response<>(Response.Status.UNAUTHORIZED, "No autorizado", LocalDateTime.now().toString());
-        String username = token.getClaim("username").asString();
-        Optional<User> userOptional = UsersRepository.getInstance().findByUsername(username);
-        if (userOptional.isEmpty()) {
-            return unathorizedResponse;
-        }
-        User user = userOptional.get();
-        if (user.role() != User.Role.ADMIN) {
-            return unathorizedResponse;
+        if (!isAdmin(token)) {
+            return new Response<>(Response.Status.UNAUTHORIZED, "No autorizado", LocalDateTime.now().toString());
         }
 
         Boolean deleted = funkoService.delete(funko).block();
@@ -252,6 +417,103 @@ public class ClientHandler extends Thread {
 
     }
 
+    @RequestHandler(value = Request.Type.UPDATEALL)
+    @Authorized
+    public Response<?> updateFunkos(@RequestBody Funko[] funkos) {
+        if (funkos == null || funkos.length == 0) {
+            return new Response<>(Response.Status.ERROR, "La peticion no contiene funkos", LocalDateTime.now().toString());
+        }
+        if (Arrays.asList(funkos).contains(null)) {
+            return new Response<>(Response.Status.ERROR, "La peticion contiene funkos vacios", LocalDateTime.now().toString());
+        }
+        List<WriteResult<Funko>> results = funkoService.updateAll(Flux.fromArray(funkos)).collectList().block();
+        return new Response<>(Response.Status.OK, BulkWriteSummary.of(results), LocalDateTime.now().toString());
+    }
+
+    @RequestHandler(value = Request.Type.STATS)
+    @Authorized
+    public Response<?> getCacheStats(@RequestToken DecodedJWT token) {
+        if (!isAdmin(token)) {
+            return new Response<>(Response.Status.UNAUTHORIZED, "No autorizado", LocalDateTime.now().toString());
+        }
+        return new Response<>(Response.Status.OK, funkoService.cacheStats(), LocalDateTime.now().toString());
+    }
+
+    private boolean isAdmin(DecodedJWT token) {
+        String username = token.getClaim("username").asString();
+        Optional<User> user = UsersRepository.getInstance().findByUsername(username);
+        return user.isPresent() && user.get().role() == User.Role.ADMIN;
+    }
+
+    private class StreamSubscriber extends BaseSubscriber<Object> {
+
+        private final Long id;
+        private final Consumer<String> writer;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        private long sent = 0;
+        // Demanda recibida entre el registro del envío y la suscripción, que BaseSubscriber.request descartaría
+        private long earlyDemand = 0;
+        private boolean subscribed = false;
+
+        private StreamSubscriber(Long id, Consumer<String> writer) {
+            this.id = id;
+            this.writer = writer;
+        }
+
+        @Override
+        protected void hookOnSubscribe(Subscription subscription) {
+            if (id == null) {
+                requestUnbounded();
+                return;
+            }
+            long early;
+            synchronized (this) {
+                subscribed = true;
+                early = earlyDemand;
+            }
+            request(Server.STREAM_WINDOW);
+            if (early > 0) {
+                request(early);
+            }
+        }
+
+        private void demand(long n) {
+            synchronized (this) {
+                if (!subscribed) {
+                    earlyDemand = earlyDemand + n < 0 ? Long.MAX_VALUE : earlyDemand + n;
+                    return;
+                }
+            }
+            request(n);
+        }
+
+        @Override
+        protected void hookOnNext(Object value) {
+            sent++;
+            writer.accept(gson.toJson(new Response<>(Response.Status.CHUNK, value, LocalDateTime.now().toString(), id)));
+        }
+
+        @Override
+        protected void hookOnComplete() {
+            writer.accept(gson.toJson(new Response<>(Response.Status.END, sent, LocalDateTime.now().toString(), id)));
+        }
+
+        @Override
+        protected void hookOnError(Throwable throwable) {
+            logger.error("Error en el envío {} al cliente {}", id, clientNumber, throwable);
+            writer.accept(gson.toJson(new Response<>(Response.Status.ERROR, "Error al enviar los funkos", LocalDateTime.now().toString(), id)));
+        }
+
+        @Override
+        protected void hookFinally(SignalType type) {
+            if (id != null) {
+                streams.remove(id, this);
+            }
+            done.complete(null);
+        }
+
+    }
+
     private DecodedJWT verifyToken(String token) {
         if (token == null) {
             return null;
@@ -0,0 +1,124 @@
+package dev.server;
+
+import com.auth0.jwt.interfaces.DecodedJWT;
+import com.google.gson.Gson;
+import dev.common.models.Request;
+import dev.common.models.Response;
+import dev.server.annotations.Authorized;
+import dev.server.annotations.RequestBody;
+import dev.server.annotations.RequestHandler;
+import dev.server.annotations.RequestToken;
+import reactor.core.publisher.Flux;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+import java.util.EnumMap;
+import java.util.Map;
+
+public class HandlerTable {
+
+    @FunctionalInterface
+    public interface ArgumentBinder {
+        Object bind(Request<?> request, DecodedJWT token);
+    }
+
+    public record Invoker(MethodHandle handle, ArgumentBinder[] binders, Class<?> bodyType, boolean authorized, boolean needsToken) {
+
+        public Object invoke(Object target, Request<?> request, DecodedJWT token) throws Throwable {
+            Object[] args = new Object[binders.length];
+            for (int i = 0; i < binders.length; i++) {
+                args[i] = binders[i].bind(request, token);
+            }
+            return (Object) handle.invokeExact(target, args);
+        }
+
+    }
+
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object.class, Object[].class);
+
+    private final Map<Request.Type, Invoker> invokers;
+
+    private HandlerTable(Map<Request.Type, Invoker> invokers) {
+        this.invokers = invokers;
+    }
+
+    public static HandlerTable build(Class<?> clazz, MethodHandles.Lookup lookup, Gson gson) {
+
+        EnumMap<Request.Type, Invoker> invokers = new EnumMap<>(Request.Type.class);
+
+        for (Method method : clazz.getDeclaredMethods()) {
+            if (!method.isAnnotationPresent(RequestHandler.class)) {
+                continue;
+            }
+            if (method.getReturnType() != Response.class && method.getReturnType() != Flux.class) {
+                String s = "El método " + method.getName() + " de " + clazz.getName() + " debe devolver una respuesta o un Flux";
+                throw new IllegalArgumentException(s);
+            }
+
+            Parameter[] parameters = method.getParameters();
+            ArgumentBinder[] binders = new ArgumentBinder[parameters.length];
+            Class<?> bodyType = null;
+            boolean needsToken = method.isAnnotationPresent(Authorized.class);
+
+            for (int i = 0; i < parameters.length; i++) {
+                binders[i] = binder(method, parameters[i], gson);
+                needsToken |= parameters[i].isAnnotationPresent(RequestToken.class);
+                if (parameters[i].isAnnotationPresent(RequestBody.class)) {
+                    bodyType = parameters[i].getType();
+                }
+            }
+
+            try {
+                MethodHandle handle = lookup.unreflect(method)
+                        .asSpreader(Object[].class, parameters.length)
+                        .asType(INVOKER_TYPE);
+                Request.Type requestType = method.getAnnotation(RequestHandler.class).value();
+                invokers.put(requestType, new Invoker(handle, binders, bodyType, method.isAnnotationPresent(Authorized.class), needsToken));
+            } catch (IllegalAccessException e) {
+                throw new IllegalArgumentException("No se puede acceder al método " + method.getName() + " de " + clazz.getName(), e);
+            }
+        }
+
+        return new HandlerTable(invokers);
+
+    }
+
+    private static ArgumentBinder binder(Method method, Parameter parameter, Gson gson) {
+
+        if (parameter.isAnnotationPresent(RequestToken.class)) {
+            if (!parameter.getType().isAssignableFrom(DecodedJWT.class)) {
+                throw new IllegalArgumentException("El parámetro " + parameter.getName() + " del método " + method.getName() + " de la clase " + method.getDeclaringClass().getName() + " debe ser de tipo DecodedJWT");
+            }
+            return (request, token) -> token;
+        }
+
+        if (parameter.isAnnotationPresent(RequestBody.class)) {
+            Class<?> type = parameter.getType();
+            // RequestDecoder ya entrega el contenido con el tipo del parámetro; solo se convierte si llega sin tipar
+            return (request, token) -> {
+                Object content = request.content();
+                return content == null || type.isInstance(content) ? content : gson.fromJson(gson.toJsonTree(content), type);
+            };
+        }
+
+        throw new IllegalArgumentException("El parámetro " + parameter.getName() + " del método " + method.getName() + " de la clase " + method.getDeclaringClass().getName() + " debe ser @RequestBody o @RequestToken");
+
+    }
+
+    public Invoker get(Request.Type type) {
+        return invokers.get(type);
+    }
+
+    public Class<?> bodyType(Request.Type type) {
+        Invoker invoker = invokers.get(type);
+        return invoker == null ? null : invoker.bodyType();
+    }
+
+    public int size() {
+        return invokers.size();
+    }
+
+}
@@ -0,0 +1,91 @@
+package dev.server;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import dev.common.models.Request;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.reflect.Type;
+import java.util.function.Function;
+
+public class RequestDecoder {
+
+    private final Gson gson;
+    private final Function<Request.Type, Type> contentTypes;
+
+    public RequestDecoder(Gson gson, Function<Request.Type, Type> contentTypes) {
+        this.gson = gson;
+        this.contentTypes = contentTypes;
+    }
+
+    public Request<Object> decode(String json) throws IOException {
+
+        try (JsonReader reader = new JsonReader(new StringReader(json))) {
+
+            reader.setLenient(true);
+
+            Request.Type type = null;
+            boolean typeRead = false;
+            Object content = null;
+            JsonElement pendingContent = null;
+            String token = null;
+            String createdAt = null;
+            Long id = null;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (reader.peek() == JsonToken.NULL) {
+                    reader.nextNull();
+                    continue;
+                }
+                switch (name) {
+                    case "type" -> {
+                        type = parseType(reader.nextString());
+                        typeRead = true;
+                    }
+                    case "content" -> {
+                        if (typeRead) {
+                            content = gson.getAdapter(TypeToken.get(contentType(type))).read(reader);
+                        } else {
+                            // El contenido llega antes que el tipo: se guarda el árbol y se convierte al final
+                            pendingContent = JsonParser.parseReader(reader);
+                        }
+                    }
+                    case "token" -> token = reader.nextString();
+                    case "createdAt" -> createdAt = reader.nextString();
+                    case "id" -> id = reader.nextLong();
+                    default -> reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            if (pendingContent != null) {
+                content = gson.fromJson(pendingContent, contentType(type));
+            }
+
+            return new Request<>(type, content, token, createdAt, id);
+
+        }
+
+    }
+
+    private Type contentType(Request.Type type) {
+        Type contentType = type == null ? null : contentTypes.apply(type);
+        return contentType == null ? Object.class : contentType;
+    }
+
+    private static Request.Type parseType(String value) {
+        try {
+            return Request.Type.valueOf(value);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+}
@@ -1,12 +1,23 @@
 package dev.server;
 
+import dev.common.models.Funko;
+import dev.common.utils.TlsContexts;
+import dev.server.nio.NioServer;
+import dev.server.repositories.FunkosReactiveRepo;
 import dev.server.repositories.FunkosReactiveRepoImpl;
 import dev.server.services.FunkoServiceImpl;
+import dev.server.services.cache.ExpiryPolicy;
+import dev.server.services.cache.FunkosCache;
 import dev.server.services.cache.FunkosCacheImpl;
+import dev.server.services.cache.NegativeCache;
+import dev.server.services.cache.OffHeapFunkosCache;
+import dev.server.services.cache.TinyLfuFunkosCache;
 import dev.server.services.database.DatabaseManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
 
+import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLServerSocket;
 import javax.net.ssl.SSLServerSocketFactory;
 import java.io.FileInputStream;
@@ -16,7 +27,11 @@ import java.sql.SQLException;
 import java.util.Objects;
 import java.util.Properties;
 import java.util.Scanner;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 
 
 public class Server {
@@ -24,9 +39,20 @@ public class Server {
     public static int PORT = 3000;
     public static String SECRET = "";
     public static long EXPIRATION_TIME = 100;
+    public static int MAX_IN_FLIGHT = 16;
+    public static int STREAM_WINDOW = 32;
     private static final AtomicLong clientNumber = new AtomicLong(0);
     private static Logger logger = LoggerFactory.getLogger(Server.class);
     private static SSLServerSocket serverSocket;
+    private static WorkerPool workerPool;
+    private static NioServer nioServer;
+    private static SSLContext sslContext;
+    private static ExecutorService requestExecutor;
+    private static DatabaseManager databaseManager;
+    private static FunkosCache<UUID, Funko> funkosCache;
+    private static FunkoServiceImpl funkoService;
+    private static final String[] PROTOCOLS = {"TLSv1.3"};
+    private static final String[] CIPHER_SUITES = {"TLS_AES_128_GCM_SHA256"};
 
 
     public static Properties loadProperties() {
@@ -53,18 +79,48 @@ public class Server {
 
         Properties props = loadProperties();
 
-        System.setProperty("javax.net.ssl.keyStore", props.getProperty("keyFile"));
-        System.setProperty("javax.net.ssl.keyStorePassword", props.getProperty("keyPassword"));
+        System.setProperty("jdk.tls.server.enableSessionTicketExtension", props.getProperty("server.tls.sessionTickets", "true"));
 
-        SSLServerSocketFactory serverFactory = (SSLServerSocketFactory) SSLServerSocketFactory.getDefault();
-        serverSocket = (SSLServerSocket) serverFactory.createServerSocket(PORT);
-
-        serverSocket.setEnabledCipherSuites(new String[]{"TLS_AES_128_GCM_SHA256"});
-        serverSocket.setEnabledProtocols(new String[]{"TLSv1.3"});
+        sslContext = TlsContexts.server(props.getProperty("keyFile"), props.getProperty("keyPassword"),
+                Integer.parseInt(props.getProperty("server.tls.sessionCache", "20480")),
+                Integer.parseInt(props.getProperty("server.tls.sessionTimeout", "86400")));
 
         SECRET = props.getProperty("tokenSecret");
         EXPIRATION_TIME = Long.parseLong(props.getProperty("tokenExpiration"));
 
+        MAX_IN_FLIGHT = Integer.parseInt(props.getProperty("server.requests.maxInFlight", "16"));
+        STREAM_WINDOW = Integer.parseInt(props.getProperty("server.stream.window", "32"));
+
+        logger.info("Tabla de manejadores creada con {} tipos de peticion", ClientHandler.registeredHandlers());
+
+        workerPool = WorkerPool.fromProperties("clientes", props);
+
+        requestExecutor = workerPool.getMode() == WorkerPool.Mode.VIRTUAL
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newFixedThreadPool(Integer.parseInt(props.getProperty("server.requests.workers", "16")));
+
+        if (props.getProperty("server.core", "blocking").trim().equalsIgnoreCase("nio")) {
+            initNioServer(props);
+            return;
+        }
+
+        SSLServerSocketFactory serverFactory = sslContext.getServerSocketFactory();
+        serverSocket = (SSLServerSocket) serverFactory.createServerSocket(PORT);
+
+        serverSocket.setEnabledCipherSuites(CIPHER_SUITES);
+        serverSocket.setEnabledProtocols(PROTOCOLS);
+
+    }
+
+    private static void initNioServer(Properties props) throws IOException {
+
+        int loops = Integer.parseInt(props.getProperty("server.nio.loops", "2"));
+        int maxBuffers = Integer.parseInt(props.getProperty("server.nio.buffers", "1024"));
+        int maxFrameLength = Integer.parseInt(props.getProperty("server.nio.maxFrame", "1048576"));
+
+        nioServer = new NioServer(PORT, sslContext, PROTOCOLS, CIPHER_SUITES, loops, requestExecutor,
+                number -> new ClientHandler(number, funkoService, requestExecutor), maxBuffers, maxFrameLength, MAX_IN_FLIGHT);
+
     }
 
     public static void run() {
@@ -77,8 +133,14 @@ public class Server {
 
             logger.info("Servidor iniciado :)");
 
+            if (nioServer != null) {
+                nioServer.start();
+                return;
+            }
+
             while (true) {
-                new ClientHandler(serverSocket.accept() , clientNumber.incrementAndGet()).start();
+                workerPool.execute(new ClientHandler(serverSocket.accept(), clientNumber.incrementAndGet(), funkoService, requestExecutor));
+                logger.debug("Estado del pool {}", workerPool);
             }
 
         }catch (Exception e){
@@ -87,19 +149,99 @@ public class Server {
 
     }
 
+    public static void shutdown() {
+
+        logger.info("Apagando servidor...");
+
+        try {
+            if (nioServer != null) {
+                nioServer.shutdown();
+            }
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            logger.error("Error al cerrar el socket del servidor", e);
+        }
+
+        if (workerPool != null) {
+            workerPool.shutdown();
+        }
+        if (requestExecutor != null) {
+            requestExecutor.shutdown();
+        }
+        if (funkoService != null) {
+            logger.info("Cargas de funkos desde la base de datos: {} emitidas, {} agrupadas con otra en curso, {} evitadas por funkos inexistentes",
+                    funkoService.getIssuedLoads(), funkoService.getCoalescedLoads(), funkoService.getMissingHits());
+        }
+        if (funkosCache != null) {
+            funkosCache.shutdown();
+        }
+        if (databaseManager != null) {
+            databaseManager.close();
+        }
+
+    }
+
+    private static FunkosCache<UUID, Funko> createCache(Properties props, FunkosReactiveRepo repo) {
+
+        int size = Integer.parseInt(props.getProperty("cache.size", "15"));
+        String type = props.getProperty("cache.type", "lru").trim().toLowerCase();
+        ExpiryPolicy policy = ExpiryPolicy.fromProperties(props);
+
+        Function<UUID, Mono<Funko>> loader = id -> {
+            try {
+                return repo.findById(id);
+            } catch (SQLException | IOException e) {
+                return Mono.error(e);
+            }
+        };
+
+        logger.info("Usando cache {} de {} funkos con {}", type, size, policy);
+
+        FunkosCache<UUID, Funko> cache = switch (type) {
+            case "lru" -> new FunkosCacheImpl(size, policy, loader);
+            case "tinylfu" -> new TinyLfuFunkosCache(size, policy, loader);
+            case "offheap" -> new OffHeapFunkosCache(size, policy, loader);
+            default -> throw new IllegalArgumentException("Tipo de cache desconocido: " + type);
+        };
+        cache.start();
+        return cache;
+
+    }
+
+    public static WorkerPool getWorkerPool() {
+        return workerPool;
+    }
+
     public static void main(String[] args) {
 
         logger.info("Inicializando servidor...");
 
-        DatabaseManager databaseManager = DatabaseManager.getInstance();
+        databaseManager = DatabaseManager.getInstance();
 
         FunkosReactiveRepoImpl funkosReactiveRepo = FunkosReactiveRepoImpl.getInstance(databaseManager);
 
-        FunkosCacheImpl funkoCache = new FunkosCacheImpl();
+        Properties props = loadProperties();
+
+        funkosCache = createCache(props, funkosReactiveRepo);
+
+        FunkoServiceImpl.ReadMode readMode = FunkoServiceImpl.ReadMode.valueOf(
+                props.getProperty("catalogue.readMode", "database").trim().toUpperCase());
+        logger.info("Lecturas del catalogo en modo {}", readMode);
 
-        FunkoServiceImpl funkoService = new FunkoServiceImpl(funkosReactiveRepo, funkoCache);
+        funkoService = new FunkoServiceImpl(funkosReactiveRepo, funkosCache, readMode, NegativeCache.fromProperties(props));
+
+        Runtime.getRuntime().addShutdownHook(new Thread(Server::shutdown, "server-shutdown"));
+
+        long existing = funkosReactiveRepo.count().block();
+        if (existing == 0) {
+            funkoService.importCsv().block();
+        } else {
+            logger.info("La base de datos ya tiene {} funkos, no se importa el CSV", existing);
+        }
 
-        funkoService.importCsv().block();
+        funkoService.buildIndexes().subscribe(null, e -> logger.error("No se han podido crear los indices de funkos", e));
 
 
         Server.run();
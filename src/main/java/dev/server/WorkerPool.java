@@ -0,0 +1,186 @@
+package dev.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public final class WorkerPool {
+
+    public enum Mode {
+        PLATFORM, VIRTUAL
+    }
+
+    public enum RejectionPolicy {
+        ABORT, DISCARD_OLDEST
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(WorkerPool.class);
+    private final String name;
+    private final Mode mode;
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final AtomicInteger active = new AtomicInteger(0);
+    private final AtomicLong rejected = new AtomicLong(0);
+
+    public WorkerPool(String name, int size, int queueDepth, RejectionPolicy policy) {
+
+        this.name = name;
+        this.mode = Mode.PLATFORM;
+        this.permits = null;
+
+        BlockingQueue<Runnable> queue = queueDepth > 0 ? new ArrayBlockingQueue<>(queueDepth) : new SynchronousQueue<>();
+
+        this.executor = new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS, queue, threadFactory(name), rejectionHandler(policy));
+
+        logger.info("Pool {} creado con {} hilos, cola de {} y politica {}", name, size, queueDepth, policy);
+
+    }
+
+    public WorkerPool(String name, int maxConnections) {
+
+        this.name = name;
+        this.mode = Mode.VIRTUAL;
+        this.permits = maxConnections > 0 ? new Semaphore(maxConnections) : null;
+        this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-virtual-", 0).factory());
+
+        logger.info("Pool {} creado con un hilo virtual por conexion y un maximo de {} conexiones", name, maxConnections > 0 ? maxConnections : "ilimitadas");
+
+    }
+
+    public static WorkerPool fromProperties(String name, Properties props) {
+
+        Mode mode = Mode.valueOf(props.getProperty("server.executor", "platform").trim().toUpperCase());
+
+        if (mode == Mode.VIRTUAL) {
+            return new WorkerPool(name, Integer.parseInt(props.getProperty("server.virtual.maxConnections", "0")));
+        }
+
+        int size = Integer.parseInt(props.getProperty("server.pool.size", "16"));
+        int queueDepth = Integer.parseInt(props.getProperty("server.pool.queue", "64"));
+        String rejection = props.getProperty("server.pool.rejection", "abort").trim().toUpperCase().replace('-', '_');
+        // Cada tarea es una conexión entera: atenderla en el hilo que acepta dejaría de aceptar conexiones hasta que
+        // ese cliente se desconectara
+        if (rejection.equals("CALLER_RUNS")) {
+            throw new IllegalArgumentException("server.pool.rejection=caller-runs no se admite: bloquearia el hilo que acepta conexiones");
+        }
+        RejectionPolicy policy = RejectionPolicy.valueOf(rejection);
+
+        return new WorkerPool(name, size, queueDepth, policy);
+
+    }
+
+    public void execute(Runnable task) {
+
+        if (mode == Mode.PLATFORM) {
+            executor.execute(task);
+            return;
+        }
+
+        if (permits != null && !permits.tryAcquire()) {
+            rejected.incrementAndGet();
+            logger.warn("Pool {} saturado, rechazando conexion: {}", name, this);
+            close(task);
+            return;
+        }
+
+        executor.execute(() -> {
+            active.incrementAndGet();
+            try {
+                task.run();
+            } finally {
+                active.decrementAndGet();
+                if (permits != null) {
+                    permits.release();
+                }
+            }
+        });
+
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public int getActiveCount() {
+        if (executor instanceof ThreadPoolExecutor pool) {
+            return pool.getActiveCount();
+        }
+        return active.get();
+    }
+
+    public int getQueuedCount() {
+        if (executor instanceof ThreadPoolExecutor pool) {
+            return pool.getQueue().size();
+        }
+        return 0;
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    public void shutdown() {
+        logger.info("Cerrando pool {}", name);
+        executor.shutdown();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s[activos=%d, en cola=%d, rechazados=%d]", name, getActiveCount(), getQueuedCount(), getRejectedCount());
+    }
+
+    private static ThreadFactory threadFactory(String name) {
+        AtomicInteger threadNumber = new AtomicInteger(0);
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-worker-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private RejectedExecutionHandler rejectionHandler(RejectionPolicy policy) {
+        return (task, pool) -> {
+            rejected.incrementAndGet();
+            switch (policy) {
+                case DISCARD_OLDEST -> {
+                    Runnable oldest = pool.getQueue().poll();
+                    logger.warn("Pool {} saturado, descartando la conexion mas antigua: {}", name, this);
+                    close(oldest);
+                    if (!pool.isShutdown()) {
+                        pool.execute(task);
+                    }
+                }
+                default -> {
+                    logger.warn("Pool {} saturado, rechazando conexion: {}", name, this);
+                    close(task);
+                }
+            }
+        };
+    }
+
+    private void close(Runnable task) {
+        if (task instanceof Closeable closeable) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                logger.error("Error al cerrar la conexion rechazada", e);
+            }
+        }
+    }
+
+}
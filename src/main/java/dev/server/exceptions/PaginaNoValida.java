@@ -0,0 +1,9 @@
+package dev.server.exceptions;
+
+public class PaginaNoValida extends RuntimeException {
+
+    public PaginaNoValida(String message) {
+        super(message);
+    }
+
+}
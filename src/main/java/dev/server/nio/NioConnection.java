@@ -0,0 +1,395 @@
+package dev.server.nio;
+
+import dev.server.ClientHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class NioConnection {
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private final Logger logger = LoggerFactory.getLogger(NioConnection.class);
+    private final long clientNumber;
+    private final SocketChannel channel;
+    private final SSLEngine engine;
+    private final EventLoop loop;
+    private final Executor workers;
+    private final BufferPool netPool;
+    private final BufferPool appPool;
+    private final ClientHandler handler;
+    private final int maxFrameLength;
+    private final int maxInFlight;
+
+    private final Queue<String> pendingFrames = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger(0);
+    private final AtomicBoolean dispatching = new AtomicBoolean(false);
+
+    // Solo se accede desde el hilo del bucle de eventos
+    private final Queue<ByteBuffer> outbound = new ArrayDeque<>();
+    private final ByteArrayOutputStream partialFrame = new ByteArrayOutputStream();
+    private SelectionKey key;
+    private ByteBuffer netIn;
+    private ByteBuffer netOut;
+    private boolean inputClosed = false;
+    private boolean closed = false;
+
+    public NioConnection(long clientNumber, SocketChannel channel, SSLEngine engine, EventLoop loop, Executor workers,
+                         BufferPool netPool, BufferPool appPool, ClientHandler handler, int maxFrameLength, int maxInFlight) {
+        this.clientNumber = clientNumber;
+        this.channel = channel;
+        this.engine = engine;
+        this.loop = loop;
+        this.workers = workers;
+        this.netPool = netPool;
+        this.appPool = appPool;
+        this.handler = handler;
+        this.maxFrameLength = maxFrameLength;
+        this.maxInFlight = maxInFlight;
+    }
+
+    public void register() {
+        try {
+            logger.info("Abriendo conexión con el cliente {}", clientNumber);
+            key = channel.register(loop.getSelector(), SelectionKey.OP_READ, this);
+            engine.beginHandshake();
+        } catch (IOException e) {
+            logger.error("Error al registrar la conexión con el cliente {}", clientNumber, e);
+            close();
+        }
+    }
+
+    public void onReadable() throws IOException {
+
+        if (netIn == null) {
+            netIn = netPool.acquire();
+        }
+
+        if (channel.read(netIn) < 0) {
+            inputClosed = true;
+            try {
+                engine.closeInbound();
+            } catch (SSLException e) {
+                logger.debug("El cliente {} cerró sin close_notify", clientNumber);
+            }
+        }
+
+        process();
+
+    }
+
+    public void onWritable() throws IOException {
+        process();
+    }
+
+    private void process() throws IOException {
+
+        boolean progress = true;
+
+        while (progress && !closed) {
+            switch (engine.getHandshakeStatus()) {
+                case NEED_TASK -> {
+                    Runnable task;
+                    while ((task = engine.getDelegatedTask()) != null) {
+                        task.run();
+                    }
+                }
+                case NEED_WRAP -> progress = wrap(EMPTY);
+                case NEED_UNWRAP, NEED_UNWRAP_AGAIN -> progress = unwrap();
+                default -> progress = unwrap() | wrapOutbound();
+            }
+        }
+
+        if (closed) {
+            return;
+        }
+
+        flush();
+
+        if (inputClosed || engine.isInboundDone()) {
+            close();
+            return;
+        }
+
+        updateInterest();
+        releaseIdleBuffers();
+
+    }
+
+    private boolean unwrap() throws IOException {
+
+        if (netIn == null || netIn.position() == 0) {
+            return false;
+        }
+
+        ByteBuffer appIn = appPool.acquire();
+
+        try {
+            netIn.flip();
+            SSLEngineResult result;
+            try {
+                result = engine.unwrap(netIn, appIn);
+            } finally {
+                netIn.compact();
+            }
+
+            decodeFrames(appIn);
+
+            return switch (result.getStatus()) {
+                case OK -> result.bytesConsumed() > 0 || result.bytesProduced() > 0;
+                case CLOSED -> {
+                    inputClosed = true;
+                    yield false;
+                }
+                default -> false;
+            };
+        } finally {
+            appPool.release(appIn);
+        }
+
+    }
+
+    private boolean wrapOutbound() throws IOException {
+
+        boolean progress = false;
+
+        while (!outbound.isEmpty()) {
+            ByteBuffer head = outbound.peek();
+            if (!wrap(head)) {
+                break;
+            }
+            progress = true;
+            if (!head.hasRemaining()) {
+                outbound.poll();
+            }
+        }
+
+        return progress;
+
+    }
+
+    private boolean wrap(ByteBuffer src) throws IOException {
+
+        if (netOut == null) {
+            netOut = netPool.acquire();
+        }
+
+        SSLEngineResult result = engine.wrap(src, netOut);
+
+        return switch (result.getStatus()) {
+            case OK -> result.bytesConsumed() > 0 || result.bytesProduced() > 0;
+            case BUFFER_OVERFLOW -> {
+                flush();
+                yield netOut.position() == 0;
+            }
+            default -> false;
+        };
+
+    }
+
+    private void flush() throws IOException {
+
+        if (netOut == null || netOut.position() == 0) {
+            return;
+        }
+
+        netOut.flip();
+        try {
+            channel.write(netOut);
+        } finally {
+            netOut.compact();
+        }
+
+    }
+
+    private void decodeFrames(ByteBuffer appIn) throws IOException {
+
+        appIn.flip();
+
+        byte[] bytes = appIn.array();
+        int start = appIn.arrayOffset() + appIn.position();
+        int end = appIn.arrayOffset() + appIn.limit();
+
+        for (int i = start; i < end; i++) {
+            if (bytes[i] == '\n') {
+                onFrame(bytes, start, i);
+                start = i + 1;
+            }
+        }
+
+        if (start < end) {
+            if (partialFrame.size() + end - start > maxFrameLength) {
+                throw new IOException("El cliente " + clientNumber + " ha superado el tamaño máximo de petición");
+            }
+            partialFrame.write(bytes, start, end - start);
+        }
+
+    }
+
+    private void onFrame(byte[] bytes, int start, int end) throws IOException {
+
+        if (end > start && bytes[end - 1] == '\r') {
+            end--;
+        }
+
+        String frame;
+        if (partialFrame.size() == 0) {
+            frame = new String(bytes, start, end - start, StandardCharsets.UTF_8);
+        } else {
+            if (partialFrame.size() + end - start > maxFrameLength) {
+                throw new IOException("El cliente " + clientNumber + " ha superado el tamaño máximo de petición");
+            }
+            partialFrame.write(bytes, start, end - start);
+            frame = partialFrame.toString(StandardCharsets.UTF_8);
+            partialFrame.reset();
+        }
+
+        if (frame.isBlank()) {
+            return;
+        }
+
+        pendingFrames.offer(frame);
+        pendingCount.incrementAndGet();
+        scheduleDispatch();
+
+    }
+
+    private void scheduleDispatch() {
+        if (dispatching.compareAndSet(false, true)) {
+            workers.execute(this::dispatchFrames);
+        }
+    }
+
+    private void dispatchFrames() {
+
+        do {
+            String frame;
+            while ((frame = pendingFrames.poll()) != null) {
+                try {
+                    handler.dispatch(frame, this::send).whenComplete((res, e) -> onRequestComplete());
+                } catch (Exception e) {
+                    logger.error("Error al procesar la petición del cliente {}", clientNumber, e);
+                    pendingCount.decrementAndGet();
+                    loop.execute(this::close);
+                    return;
+                }
+            }
+            dispatching.set(false);
+        } while (!pendingFrames.isEmpty() && dispatching.compareAndSet(false, true));
+
+    }
+
+    private void onRequestComplete() {
+        if (pendingCount.decrementAndGet() == maxInFlight - 1) {
+            loop.execute(() -> {
+                if (!closed) {
+                    updateInterest();
+                }
+            });
+        }
+    }
+
+    private void send(String response) {
+
+        ByteBuffer buffer = ByteBuffer.wrap((response + "\n").getBytes(StandardCharsets.UTF_8));
+
+        loop.execute(() -> {
+            if (closed) {
+                return;
+            }
+            outbound.offer(buffer);
+            try {
+                process();
+            } catch (IOException e) {
+                logger.error("Error al enviar la respuesta al cliente {}", clientNumber, e);
+                close();
+            }
+        });
+
+    }
+
+    private void updateInterest() {
+
+        int ops = 0;
+        if (!inputClosed && pendingCount.get() < maxInFlight) {
+            ops |= SelectionKey.OP_READ;
+        }
+        if (netOut != null && netOut.position() > 0) {
+            ops |= SelectionKey.OP_WRITE;
+        }
+        key.interestOps(ops);
+
+    }
+
+    private void releaseIdleBuffers() {
+
+        if (netIn != null && netIn.position() == 0) {
+            netPool.release(netIn);
+            netIn = null;
+        }
+        if (netOut != null && netOut.position() == 0) {
+            netPool.release(netOut);
+            netOut = null;
+        }
+
+    }
+
+    public void close() {
+
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        try {
+            engine.closeOutbound();
+            if (netOut == null) {
+                netOut = netPool.acquire();
+            }
+            engine.wrap(EMPTY, netOut);
+            flush();
+        } catch (IOException e) {
+            logger.debug("No se ha podido enviar close_notify al cliente {}", clientNumber);
+        }
+
+        if (key != null) {
+            key.cancel();
+        }
+
+        try {
+            channel.close();
+            handler.close();
+        } catch (IOException e) {
+            logger.error("Error al cerrar la conexión con el cliente {}", clientNumber, e);
+        }
+
+        netPool.release(netIn);
+        netPool.release(netOut);
+        netIn = null;
+        netOut = null;
+        outbound.clear();
+        partialFrame.reset();
+
+    }
+
+    @Override
+    public String toString() {
+        return "cliente " + clientNumber;
+    }
+
+}
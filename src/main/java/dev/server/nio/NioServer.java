@@ -0,0 +1,107 @@
+package dev.server.nio;
+
+import dev.server.ClientHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSession;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongFunction;
+
+public class NioServer {
+
+    private final Logger logger = LoggerFactory.getLogger(NioServer.class);
+    private final AtomicLong clientNumber = new AtomicLong(0);
+    private final int port;
+    private final SSLContext sslContext;
+    private final String[] protocols;
+    private final String[] cipherSuites;
+    private final EventLoop[] loops;
+    private final Executor workers;
+    private final LongFunction<ClientHandler> handlers;
+    private final BufferPool netPool;
+    private final BufferPool appPool;
+    private final int maxFrameLength;
+    private final int maxInFlight;
+    private ServerSocketChannel serverChannel;
+
+    public NioServer(int port, SSLContext sslContext, String[] protocols, String[] cipherSuites, int loopCount,
+                     Executor workers, LongFunction<ClientHandler> handlers, int maxBuffers, int maxFrameLength, int maxInFlight) throws IOException {
+
+        this.port = port;
+        this.sslContext = sslContext;
+        this.protocols = protocols;
+        this.cipherSuites = cipherSuites;
+        this.workers = workers;
+        this.handlers = handlers;
+        this.maxFrameLength = maxFrameLength;
+        this.maxInFlight = maxInFlight;
+
+        SSLSession session = createEngine().getSession();
+        this.netPool = new BufferPool(session.getPacketBufferSize(), maxBuffers, true);
+        this.appPool = new BufferPool(session.getApplicationBufferSize(), maxBuffers, false);
+
+        this.loops = new EventLoop[loopCount];
+        for (int i = 0; i < loopCount; i++) {
+            loops[i] = new EventLoop();
+        }
+
+    }
+
+    public void start() throws IOException {
+
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+
+        for (int i = 0; i < loops.length; i++) {
+            Thread thread = new Thread(loops[i], "nio-loop-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        logger.info("Servidor NIO escuchando en el puerto {} con {} bucles de eventos", port, loops.length);
+
+        while (serverChannel.isOpen()) {
+            SocketChannel channel = serverChannel.accept();
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+            long number = clientNumber.incrementAndGet();
+            EventLoop loop = loops[(int) (number % loops.length)];
+            NioConnection connection = new NioConnection(number, channel, createEngine(), loop, workers,
+                    netPool, appPool, handlers.apply(number), maxFrameLength, maxInFlight);
+            loop.execute(connection::register);
+        }
+
+    }
+
+    public void shutdown() throws IOException {
+
+        logger.info("Cerrando servidor NIO");
+
+        if (serverChannel != null) {
+            serverChannel.close();
+        }
+        for (EventLoop loop : loops) {
+            loop.shutdown();
+        }
+
+    }
+
+    private SSLEngine createEngine() {
+        SSLEngine engine = sslContext.createSSLEngine();
+        engine.setUseClientMode(false);
+        engine.setEnabledProtocols(protocols);
+        engine.setEnabledCipherSuites(cipherSuites);
+        return engine;
+    }
+
+}
@@ -1,5 +1,6 @@
 package dev.server.repositories;
 
+import org.reactivestreams.Publisher;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
@@ -16,6 +17,10 @@ public interface CRUDRepo<T, ID> {
 
     Mono<T> update(T entity) throws SQLException, IOException;
 
+    Flux<WriteResult<T>> saveAll(Publisher<T> entities);
+
+    Flux<WriteResult<T>> updateAll(Publisher<T> entities);
+
     Mono<Boolean> delete(ID id) throws SQLException, IOException;
 
     Mono<Void> deleteAll();
@@ -1,12 +1,29 @@
 package dev.server.repositories;
 
 import dev.common.models.Funko;
+import dev.common.models.Page;
+import dev.server.database.models.Modelo;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.UUID;
 
 public interface FunkosReactiveRepo extends CRUDRepo<Funko, UUID>{
 
     Mono<Funko> findByName(String name);
 
+    Flux<Funko> findAllById(Collection<UUID> ids);
+
+    Flux<Funko> findByModelo(Modelo modelo);
+
+    Flux<Funko> findByReleaseYear(int year);
+
+    Mono<Long> count();
+
+    Mono<Page<Funko>> findPage(String token, int size);
+
+    Mono<Long> saveBatch(List<Funko> funkos);
+
 }
@@ -1,10 +1,15 @@
 package dev.server.repositories;
 
 import dev.common.models.Funko;
+import dev.common.models.Page;
 import dev.server.database.models.Modelo;
+import dev.server.exceptions.PaginaNoValida;
 import dev.server.services.database.DatabaseManager;
 import io.r2dbc.spi.Connection;
 import io.r2dbc.spi.Result;
+import io.r2dbc.spi.Row;
+import io.r2dbc.spi.Statement;
+import org.reactivestreams.Publisher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import reactor.core.publisher.Flux;
@@ -15,7 +20,11 @@ import java.math.BigDecimal;
 import java.sql.SQLException;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
+import java.util.function.BiConsumer;
 
 public class FunkosReactiveRepoImpl implements FunkosReactiveRepo {
 
@@ -31,6 +40,16 @@ public class FunkosReactiveRepoImpl implements FunkosReactiveRepo {
         private final String columnName;
     }
 
+    private record KeyedFunko(long id, Funko funko) {
+    }
+
+    // Máximo de parámetros por cada SELECT ... IN, para no generar sentencias enormes
+    private static final int IN_BATCH = 500;
+    // Filas por lote en saveAll y updateAll
+    private static final int BULK_BATCH = 500;
+    private static final String INSERT_SQL = "INSERT INTO funkos (cod, nombre, modelo, precio, fecha_lanzamiento) VALUES (?, ?, ?, ?, ?)";
+    private static final String UPDATE_SQL = "UPDATE funkos SET nombre = ?, modelo = ?, precio = ?, fecha_lanzamiento = ? WHERE cod = ?";
+
     private final Logger logger = LoggerFactory.getLogger(FunkosReactiveRepoImpl.class);
     private static FunkosReactiveRepoImpl instance;
     private final DatabaseManager databaseManager;
@@ -53,11 +72,7 @@ public class FunkosReactiveRepoImpl implements FunkosReactiveRepo {
 
         return Flux.usingWhen(
             databaseManager.getConnectionPool().create(),
-            connection -> Flux.from(connection.createStatement(sql).execute()).flatMap(res->  res.map((row, rm)-> new Funko(row.get("cod", UUID.class),
-                    row.get(Columns.NOMBRE.columnName, String.class),
-                    Modelo.valueOf(row.get(Columns.MODELO.columnName, String.class)),
-                    row.get(Columns.PRECIO.columnName, BigDecimal.class).doubleValue(),
-                    LocalDate.from(row.get(Columns.FECHALANZAMIENTO.columnName, LocalDateTime.class))))
+            connection -> Flux.from(connection.createStatement(sql).execute()).flatMap(res->  res.map((row, rm)-> toFunko(row))
             ),
             Connection::close
         );
@@ -69,17 +84,98 @@ public class FunkosReactiveRepoImpl implements FunkosReactiveRepo {
         String sql = "SELECT * FROM funkos WHERE cod = ?";
 
         return Mono.usingWhen(databaseManager.getConnectionPool().create(),
-                connection -> Mono.from(connection.createStatement(sql).bind(0, id).execute()).flatMap(res->  Mono.from(res.map((row, rm)-> new Funko(row.get("cod", UUID.class),
-                        row.get(Columns.NOMBRE.columnName, String.class),
-                        Modelo.valueOf(row.get(Columns.MODELO.columnName, String.class)),
-                        row.get(Columns.PRECIO.columnName, BigDecimal.class).doubleValue(),
-                        LocalDate.from(row.get(Columns.FECHALANZAMIENTO.columnName, LocalDateTime.class))))
+                connection -> Mono.from(connection.createStatement(sql).bind(0, id).execute()).flatMap(res->  Mono.from(res.map((row, rm)-> toFunko(row))
                 )),
                 Connection::close
                 );
 
     }
 
+    @Override
+    public Flux<Funko> findAllById(Collection<UUID> ids) {
+        if (ids.isEmpty()) {
+            return Flux.empty();
+        }
+        logger.info("Buscando " + ids.size() + " funkos por id");
+
+        return Flux.usingWhen(databaseManager.getConnectionPool().create(),
+                connection -> Flux.fromIterable(ids).buffer(IN_BATCH).concatMap(batch -> {
+                    String placeholders = String.join(", ", Collections.nCopies(batch.size(), "?"));
+                    Statement statement = connection.createStatement("SELECT * FROM funkos WHERE cod IN (" + placeholders + ")");
+                    for (int i = 0; i < batch.size(); i++) {
+                        statement.bind(i, batch.get(i));
+                    }
+                    return Flux.from(statement.execute()).flatMap(res -> res.map((row, rm) -> toFunko(row)));
+                }),
+                Connection::close
+        );
+    }
+
+    @Override
+    public Flux<Funko> findByModelo(Modelo modelo) {
+        logger.info("Buscando funkos del modelo " + modelo);
+        String sql = "SELECT * FROM funkos WHERE modelo = ?";
+
+        return Flux.usingWhen(databaseManager.getConnectionPool().create(),
+                connection -> Flux.from(connection.createStatement(sql).bind(0, modelo.name()).execute())
+                        .flatMap(res -> res.map((row, rm) -> toFunko(row))),
+                Connection::close
+        );
+    }
+
+    // Paginación por clave: cada página sigue desde el id que guarda el token usando la clave primaria, así que una
+    // página lejana cuesta lo mismo que la primera. Se pide una fila de más para saber si hay otra página.
+    @Override
+    public Mono<Page<Funko>> findPage(String token, int size) {
+        if (size < 1) {
+            return Mono.error(new PaginaNoValida("Tamaño de pagina no valido: " + size));
+        }
+        long afterId;
+        try {
+            afterId = PageToken.decode(token);
+        } catch (PaginaNoValida e) {
+            return Mono.error(e);
+        }
+        logger.info("Obteniendo " + size + " funkos desde el id " + afterId);
+        String sql = "SELECT * FROM funkos WHERE id > ? ORDER BY id LIMIT ?";
+
+        return Flux.usingWhen(databaseManager.getConnectionPool().create(),
+                        connection -> Flux.from(connection.createStatement(sql).bind(0, afterId).bind(1, size + 1).execute())
+                                .flatMap(res -> res.map((row, rm) -> new KeyedFunko(row.get("id", Integer.class), toFunko(row)))),
+                        Connection::close)
+                .collectList()
+                .map(rows -> {
+                    List<KeyedFunko> page = rows.size() > size ? rows.subList(0, size) : rows;
+                    String next = rows.size() > size ? PageToken.encode(page.get(page.size() - 1).id()) : null;
+                    return new Page<>(page.stream().map(KeyedFunko::funko).toList(), next);
+                });
+    }
+
+    // Rango de fechas en vez de YEAR(fecha_lanzamiento) para que la base de datos pueda usar un índice sobre la columna
+    @Override
+    public Flux<Funko> findByReleaseYear(int year) {
+        logger.info("Buscando funkos lanzados en " + year);
+        String sql = "SELECT * FROM funkos WHERE fecha_lanzamiento >= ? AND fecha_lanzamiento < ?";
+
+        return Flux.usingWhen(databaseManager.getConnectionPool().create(),
+                connection -> Flux.from(connection.createStatement(sql)
+                                .bind(0, LocalDate.ofYearDay(year, 1).atStartOfDay())
+                                .bind(1, LocalDate.ofYearDay(year + 1, 1).atStartOfDay())
+                                .execute())
+                        .flatMap(res -> res.map((row, rm) -> toFunko(row))),
+                Connection::close
+        );
+    }
+
+    @Override
+    public Mono<Long> count() {
+        return Mono.usingWhen(databaseManager.getConnectionPool().create(),
+                connection -> Mono.from(connection.createStatement("SELECT COUNT(*) AS total FROM funkos").execute())
+                        .flatMap(res -> Mono.from(res.map((row, rm) -> row.get("total", Long.class)))),
+                Connection::close
+        );
+    }
+
     @Override
     public Mono<Funko> save(Funko entity) {
         logger.info("Guardando funko ");
@@ -91,6 +187,132 @@ public class FunkosReactiveRepoImpl implements FunkosReactiveRepo {
 
     }
 
+    // El INSERT de una fila con un juego de parámetros por funko (Statement.add), que se ejecuta de una vez como un
+    // lote de parámetros dentro de una transacción: o se guardan todos o ninguno
+    @Override
+    public Mono<Long> saveBatch(List<Funko> funkos) {
+        if (funkos.isEmpty()) {
+            return Mono.just(0L);
+        }
+        logger.info("Guardando lote de " + funkos.size() + " funkos");
+
+        return Mono.usingWhen(databaseManager.getConnectionPool().create(),
+                connection -> Mono.from(connection.beginTransaction())
+                        .thenMany(Flux.defer(() -> batchStatement(connection, INSERT_SQL, FunkosReactiveRepoImpl::bindInsert, funkos).execute()))
+                        .flatMap(Result::getRowsUpdated)
+                        .reduce(0L, Long::sum)
+                        .flatMap(rows -> Mono.from(connection.commitTransaction()).thenReturn(rows))
+                        .onErrorResume(e -> Mono.from(connection.rollbackTransaction()).then(Mono.error(e))),
+                Connection::close);
+    }
+
+    @Override
+    public Flux<WriteResult<Funko>> saveAll(Publisher<Funko> funkos) {
+        return writeAll(funkos, INSERT_SQL, FunkosReactiveRepoImpl::bindInsert);
+    }
+
+    @Override
+    public Flux<WriteResult<Funko>> updateAll(Publisher<Funko> funkos) {
+        return writeAll(funkos, UPDATE_SQL, FunkosReactiveRepoImpl::bindUpdate);
+    }
+
+    // Todo va por una sola conexión, en lotes de BULK_BATCH filas que se confirman juntas. Si un lote falla se deshace
+    // y se repite fila a fila para saber cuáles fallan y guardar las demás
+    private Flux<WriteResult<Funko>> writeAll(Publisher<Funko> funkos, String sql, BiConsumer<Statement, Funko> binder) {
+        return Flux.usingWhen(databaseManager.getConnectionPool().create(),
+                connection -> Flux.from(funkos).buffer(BULK_BATCH)
+                        .concatMap(batch -> writeBatch(connection, sql, binder, batch)),
+                Connection::close);
+    }
+
+    // Los parámetros se enlazan dentro de la transacción, así que un fallo al enlazar también deshace el lote. Si hay
+    // algún funko incompleto el lote se escribe fila a fila para rechazar solo ese
+    private Flux<WriteResult<Funko>> writeBatch(Connection connection, String sql, BiConsumer<Statement, Funko> binder, List<Funko> batch) {
+        if (batch.stream().anyMatch(funko -> invalid(funko) != null)) {
+            return Flux.fromIterable(batch).concatMap(funko -> writeOne(connection, sql, binder, funko));
+        }
+        logger.info("Escribiendo lote de " + batch.size() + " funkos");
+
+        return Mono.from(connection.beginTransaction())
+                .thenMany(Flux.defer(() -> batchStatement(connection, sql, binder, batch).execute()))
+                .concatMap(Result::getRowsUpdated)
+                .collectList()
+                .flatMap(rows -> rows.size() == batch.size()
+                        ? Mono.from(connection.commitTransaction()).thenReturn(rows)
+                        : Mono.error(new IllegalStateException("Se esperaban " + batch.size() + " resultados y han llegado " + rows.size())))
+                .flatMapMany(rows -> Flux.range(0, batch.size()).map(i -> result(batch.get(i), rows.get(i))))
+                .onErrorResume(e -> {
+                    logger.warn("Lote de " + batch.size() + " funkos rechazado, se escriben uno a uno: " + e.getMessage());
+                    return Mono.from(connection.rollbackTransaction())
+                            .thenMany(Flux.fromIterable(batch).concatMap(funko -> writeOne(connection, sql, binder, funko)));
+                });
+    }
+
+    private Mono<WriteResult<Funko>> writeOne(Connection connection, String sql, BiConsumer<Statement, Funko> binder, Funko funko) {
+        String invalid = invalid(funko);
+        if (invalid != null) {
+            return Mono.just(WriteResult.failed(funko, invalid));
+        }
+        return Flux.defer(() -> {
+                    Statement statement = connection.createStatement(sql);
+                    binder.accept(statement, funko);
+                    return statement.execute();
+                })
+                .flatMap(Result::getRowsUpdated)
+                .reduce(0L, Long::sum)
+                .map(rows -> result(funko, rows))
+                .onErrorResume(e -> Mono.just(WriteResult.failed(funko, e.getMessage() == null ? e.toString() : e.getMessage())));
+    }
+
+    private static WriteResult<Funko> result(Funko funko, long rows) {
+        return rows > 0 ? WriteResult.written(funko) : WriteResult.failed(funko, "Funko con id " + funko.codigo() + " no encontrado");
+    }
+
+    // Sin código no se puede escribir, y sin modelo (Gson deja null un modelo desconocido) o sin fecha la fila no se
+    // podría volver a leer. El nombre sí puede faltar.
+    private static String invalid(Funko funko) {
+        if (funko.codigo() == null) {
+            return "El funko no tiene codigo";
+        }
+        if (funko.modelo() == null) {
+            return "Modelo vacio o desconocido";
+        }
+        if (funko.fechaLanzamiento() == null) {
+            return "El funko no tiene fecha de lanzamiento";
+        }
+        return null;
+    }
+
+    // Una fila de parámetros por funko con Statement.add, para enviarlas todas en una sola ejecución
+    private static Statement batchStatement(Connection connection, String sql, BiConsumer<Statement, Funko> binder, List<Funko> funkos) {
+        Statement statement = connection.createStatement(sql);
+        for (int i = 0; i < funkos.size(); i++) {
+            if (i > 0) {
+                statement.add();
+            }
+            binder.accept(statement, funkos.get(i));
+        }
+        return statement;
+    }
+
+    private static void bindInsert(Statement statement, Funko funko) {
+        statement.bind(0, funko.codigo()).bind(2, funko.modelo().name()).bind(3, funko.precio()).bind(4, funko.fechaLanzamiento());
+        bindNombre(statement, 1, funko.nombre());
+    }
+
+    private static void bindUpdate(Statement statement, Funko funko) {
+        statement.bind(4, funko.codigo()).bind(1, funko.modelo().name()).bind(2, funko.precio()).bind(3, funko.fechaLanzamiento());
+        bindNombre(statement, 0, funko.nombre());
+    }
+
+    private static void bindNombre(Statement statement, int index, String nombre) {
+        if (nombre == null) {
+            statement.bindNull(index, String.class);
+        } else {
+            statement.bind(index, nombre);
+        }
+    }
+
     @Override
     public Mono<Funko> update(Funko entity) throws SQLException, IOException {
         logger.info("Actualizando funko ");
@@ -132,14 +354,18 @@ public class FunkosReactiveRepoImpl implements FunkosReactiveRepo {
         logger.info("Buscando funko por nombre");
 
         return Mono.usingWhen(databaseManager.getConnectionPool().create(),
-                connection -> Mono.from(connection.createStatement("SELECT * FROM funkos WHERE nombre = ?").bind(0, name).execute()).flatMap(res->  Mono.from(res.map((row, rm)-> new Funko(row.get("cod", UUID.class),
-                        row.get(Columns.NOMBRE.columnName, String.class),
-                        Modelo.valueOf(row.get(Columns.MODELO.columnName, String.class)),
-                        row.get(Columns.PRECIO.columnName, BigDecimal.class).doubleValue(),
-                        LocalDate.from(row.get(Columns.FECHALANZAMIENTO.columnName, LocalDateTime.class))))
+                connection -> Mono.from(connection.createStatement("SELECT * FROM funkos WHERE nombre = ?").bind(0, name).execute()).flatMap(res->  Mono.from(res.map((row, rm)-> toFunko(row))
                 )),
                 Connection::close
         );
 
     }
+
+    private static Funko toFunko(Row row) {
+        return new Funko(row.get("cod", UUID.class),
+                row.get(Columns.NOMBRE.columnName, String.class),
+                Modelo.valueOf(row.get(Columns.MODELO.columnName, String.class)),
+                row.get(Columns.PRECIO.columnName, BigDecimal.class).doubleValue(),
+                LocalDate.from(row.get(Columns.FECHALANZAMIENTO.columnName, LocalDateTime.class)));
+    }
 }
@@ -0,0 +1,39 @@
+package dev.server.repositories;
+
+import dev.server.exceptions.PaginaNoValida;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+// El token de continuación guarda el id de la última fila enviada. Va en Base64 para que los clientes lo traten como
+// un valor opaco y se pueda cambiar su contenido sin cambiar el protocolo.
+final class PageToken {
+
+    private static final String PREFIX = "id:";
+
+    private PageToken() {
+    }
+
+    static String encode(long lastId) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString((PREFIX + lastId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    // 0 para la primera página, los id empiezan en 1
+    static long decode(String token) {
+        if (token == null || token.isEmpty()) {
+            return 0;
+        }
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            if (value.startsWith(PREFIX)) {
+                long lastId = Long.parseLong(value.substring(PREFIX.length()));
+                if (lastId >= 0) {
+                    return lastId;
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            // Base64 o número mal formados, se trata igual que un prefijo desconocido
+        }
+        throw new PaginaNoValida("Token de pagina no valido: " + token);
+    }
+}
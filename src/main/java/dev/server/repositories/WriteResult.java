@@ -0,0 +1,17 @@
+package dev.server.repositories;
+
+// Resultado de cada entidad en una escritura masiva; error es null si se ha escrito
+public record WriteResult<T>(T entity, String error) {
+
+    public static <T> WriteResult<T> written(T entity) {
+        return new WriteResult<>(entity, null);
+    }
+
+    public static <T> WriteResult<T> failed(T entity, String error) {
+        return new WriteResult<>(entity, error);
+    }
+
+    public boolean isWritten() {
+        return error == null;
+    }
+}
@@ -0,0 +1,27 @@
+package dev.server.services;
+
+import dev.common.models.Funko;
+import dev.server.repositories.WriteResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+// Respuesta de POSTALL y UPDATEALL: cuántos funkos se han escrito y, para cada uno que no, su posición en la
+// petición y el motivo
+public record BulkWriteSummary(int written, int failed, List<Failure> failures) {
+
+    public record Failure(int index, UUID codigo, String error) {
+    }
+
+    public static BulkWriteSummary of(List<WriteResult<Funko>> results) {
+        List<Failure> failures = new ArrayList<>();
+        for (int i = 0; i < results.size(); i++) {
+            WriteResult<Funko> result = results.get(i);
+            if (!result.isWritten()) {
+                failures.add(new Failure(i, result.entity().codigo(), result.error()));
+            }
+        }
+        return new BulkWriteSummary(results.size() - failures.size(), failures.size(), failures);
+    }
+}
@@ -0,0 +1,119 @@
+package dev.server.services;
+
+import dev.common.models.Funko;
+import dev.server.database.models.Modelo;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+// Copia inmutable de toda la tabla. Cada escritura construye una copia nueva que se publica de una vez, así que
+// los lectores nunca ven un estado a medias ni necesitan bloqueos.
+final class CatalogueSnapshot implements CatalogueView {
+
+    private final List<Funko> rows;
+    private final Map<UUID, Funko> byId;
+    private final Map<Modelo, List<Funko>> byModelo;
+    private final Map<Integer, List<Funko>> byYear;
+
+    CatalogueSnapshot(Collection<Funko> funkos) {
+        this.rows = List.copyOf(funkos);
+        Map<UUID, Funko> ids = new HashMap<>();
+        Map<Modelo, List<Funko>> modelos = new EnumMap<>(Modelo.class);
+        Map<Integer, List<Funko>> years = new HashMap<>();
+        for (Funko funko : rows) {
+            ids.put(funko.codigo(), funko);
+            modelos.computeIfAbsent(funko.modelo(), modelo -> new ArrayList<>()).add(funko);
+            years.computeIfAbsent(funko.fechaLanzamiento().getYear(), year -> new ArrayList<>()).add(funko);
+        }
+        modelos.replaceAll((modelo, group) -> Collections.unmodifiableList(group));
+        years.replaceAll((year, group) -> Collections.unmodifiableList(group));
+        this.byId = ids;
+        this.byModelo = Collections.unmodifiableMap(modelos);
+        this.byYear = years;
+    }
+
+    @Override
+    public CatalogueSnapshot insert(Funko funko) {
+        return insertAll(List.of(funko));
+    }
+
+    // Igual que el UPDATE por código, si el funko no está la copia no cambia
+    @Override
+    public CatalogueSnapshot update(Funko funko) {
+        return updateAll(List.of(funko));
+    }
+
+    @Override
+    public CatalogueSnapshot insertAll(Collection<Funko> funkos) {
+        if (funkos.isEmpty()) {
+            return this;
+        }
+        List<Funko> copy = new ArrayList<>(rows.size() + funkos.size());
+        copy.addAll(rows);
+        copy.addAll(funkos);
+        return new CatalogueSnapshot(copy);
+    }
+
+    @Override
+    public CatalogueSnapshot updateAll(Collection<Funko> funkos) {
+        Map<UUID, Funko> updates = new HashMap<>();
+        for (Funko funko : funkos) {
+            if (byId.containsKey(funko.codigo())) {
+                updates.put(funko.codigo(), funko);
+            }
+        }
+        if (updates.isEmpty()) {
+            return this;
+        }
+        return new CatalogueSnapshot(rows.stream()
+                .map(row -> updates.getOrDefault(row.codigo(), row))
+                .toList());
+    }
+
+    @Override
+    public CatalogueSnapshot remove(UUID id) {
+        if (!byId.containsKey(id)) {
+            return this;
+        }
+        return new CatalogueSnapshot(rows.stream()
+                .filter(row -> !row.codigo().equals(id))
+                .toList());
+    }
+
+    @Override
+    public Optional<Funko> findById(UUID id) {
+        return Optional.ofNullable(byId.get(id));
+    }
+
+    @Override
+    public List<Funko> all() {
+        return rows;
+    }
+
+    @Override
+    public List<Funko> byModelo(Modelo modelo) {
+        return byModelo.getOrDefault(modelo, List.of());
+    }
+
+    @Override
+    public List<Funko> releasedIn(int year) {
+        return byYear.getOrDefault(year, List.of());
+    }
+
+    @Override
+    public Map<Modelo, List<Funko>> groupedByModel() {
+        return byModelo;
+    }
+
+    @Override
+    public int size() {
+        return rows.size();
+    }
+}
@@ -0,0 +1,38 @@
+package dev.server.services;
+
+import dev.common.models.Funko;
+import dev.server.database.models.Modelo;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+// Vista en memoria de la tabla de funkos. Las escrituras devuelven la vista que hay que publicar: la misma si se
+// modifica en el sitio o una copia nueva si es inmutable.
+interface CatalogueView {
+
+    CatalogueView insert(Funko funko);
+
+    CatalogueView update(Funko funko);
+
+    CatalogueView remove(UUID id);
+
+    // Aplican un lote de escrituras ya confirmadas de una vez, para no copiar la vista por cada fila
+    CatalogueView insertAll(Collection<Funko> funkos);
+
+    CatalogueView updateAll(Collection<Funko> funkos);
+
+    Optional<Funko> findById(UUID id);
+
+    List<Funko> all();
+
+    List<Funko> byModelo(Modelo modelo);
+
+    List<Funko> releasedIn(int year);
+
+    Map<Modelo, List<Funko>> groupedByModel();
+
+    int size();
+}
@@ -0,0 +1,283 @@
+package dev.server.services;
+
+import dev.common.models.Funko;
+import dev.server.database.models.Modelo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.ObjLongConsumer;
+
+// Lee el CSV de funkos proyectando el fichero en memoria por trozos que terminan en un salto de línea, y cada trozo
+// se procesa en un hilo distinto. Los campos se leen directamente de los bytes; solo se crea un String para el nombre
+// y para los valores que no tienen la forma habitual, que se interpretan igual que antes con split(",").
+class FunkoCsvParser {
+
+    private static final Logger logger = LoggerFactory.getLogger(FunkoCsvParser.class);
+
+    private static final int DEFAULT_CHUNK_BYTES = 16 * 1024 * 1024;
+    private static final int UUID_LENGTH = 35;
+    private static final int MAX_FAST_DIGITS = 15;
+    private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15};
+    private static final Modelo[] MODELOS = Modelo.values();
+    private static final byte[][] MODELO_NAMES = new byte[MODELOS.length][];
+
+    static {
+        for (Modelo modelo : MODELOS) {
+            MODELO_NAMES[modelo.ordinal()] = modelo.name().getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    private record Chunk(long start, long end) {
+    }
+
+    // Posición dentro del trozo, las comas de la línea actual y un buffer para los campos que se convierten a String
+    private static final class Cursor {
+        int position;
+        final int[] commas = new int[4];
+        byte[] scratch = new byte[64];
+    }
+
+    private final int workers;
+    private final int chunkBytes;
+
+    FunkoCsvParser() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_CHUNK_BYTES);
+    }
+
+    FunkoCsvParser(int workers, int chunkBytes) {
+        this.workers = Math.max(1, workers);
+        this.chunkBytes = Math.max(1, chunkBytes);
+    }
+
+    // Los funkos salen en el orden del fichero, sin la cabecera. Las líneas que no se pueden leer se pasan a
+    // onRejected con su posición en bytes y no detienen la lectura. onRejected se llama desde los hilos que leen los
+    // trozos, a la vez y sin orden, así que tiene que ser seguro entre hilos.
+    Flux<Funko> parse(Path file, ObjLongConsumer<RuntimeException> onRejected) {
+        return Flux.using(
+                () -> FileChannel.open(file, StandardOpenOption.READ),
+                channel -> Flux.defer(() -> chunks(channel))
+                        .flatMapSequential(chunk -> parseChunk(channel, chunk, onRejected).subscribeOn(Schedulers.parallel()), workers),
+                channel -> {
+                    try {
+                        channel.close();
+                    } catch (IOException e) {
+                        logger.error("Error al cerrar el fichero " + file, e);
+                    }
+                });
+    }
+
+    private Flux<Chunk> chunks(FileChannel channel) {
+        List<Chunk> chunks = new ArrayList<>();
+        try {
+            long size = channel.size();
+            long start = lineEnd(channel, 0, size);
+            while (start < size) {
+                long end = start + chunkBytes >= size ? size : lineEnd(channel, start + chunkBytes, size);
+                chunks.add(new Chunk(start, end));
+                start = end;
+            }
+            logger.debug("CSV de " + size + " bytes dividido en " + chunks.size() + " trozos");
+        } catch (IOException e) {
+            return Flux.error(new UncheckedIOException(e));
+        }
+        return Flux.fromIterable(chunks);
+    }
+
+    // Primera posición después del salto de línea que hay en from o más adelante
+    private static long lineEnd(FileChannel channel, long from, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        long position = from;
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    private static Flux<Funko> parseChunk(FileChannel channel, Chunk chunk, ObjLongConsumer<RuntimeException> onRejected) {
+        return Flux.defer(() -> {
+            MappedByteBuffer buffer;
+            try {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, chunk.start(), chunk.end() - chunk.start());
+            } catch (IOException e) {
+                return Flux.error(new UncheckedIOException(e));
+            }
+            int limit = buffer.limit();
+            return Flux.generate(Cursor::new, (cursor, sink) -> {
+                while (cursor.position < limit) {
+                    int from = cursor.position;
+                    int to = from;
+                    while (to < limit && buffer.get(to) != '\n') {
+                        to++;
+                    }
+                    cursor.position = to + 1;
+                    int end = to > from && buffer.get(to - 1) == '\r' ? to - 1 : to;
+                    try {
+                        sink.next(parseLine(buffer, from, end, cursor));
+                        return cursor;
+                    } catch (RuntimeException e) {
+                        onRejected.accept(e, chunk.start() + from);
+                    }
+                }
+                sink.complete();
+                return cursor;
+            });
+        });
+    }
+
+    private static Funko parseLine(ByteBuffer buffer, int from, int to, Cursor cursor) {
+        int[] commas = cursor.commas;
+        int found = 0;
+        for (int i = from; i < to && found < commas.length; i++) {
+            if (buffer.get(i) == ',') {
+                commas[found++] = i;
+            }
+        }
+        if (found < commas.length) {
+            throw new IllegalArgumentException("La linea tiene " + (found + 1) + " campos y se esperaban 5");
+        }
+        int dateEnd = commas[3] + 1;
+        while (dateEnd < to && buffer.get(dateEnd) != ',') {
+            dateEnd++;
+        }
+        return new Funko(
+                parseUuid(buffer, from, commas[0], cursor),
+                string(buffer, commas[0] + 1, commas[1], cursor),
+                parseModelo(buffer, commas[1] + 1, commas[2], cursor),
+                parsePrecio(buffer, commas[2] + 1, commas[3], cursor),
+                parseFecha(buffer, commas[3] + 1, dateEnd, cursor));
+    }
+
+    // Como UUID.fromString(campo.substring(0, 35)): el último grupo tiene 11 cifras en vez de 12
+    private static UUID parseUuid(ByteBuffer buffer, int from, int to, Cursor cursor) {
+        if (to - from >= UUID_LENGTH && buffer.get(from + 8) == '-' && buffer.get(from + 13) == '-'
+                && buffer.get(from + 18) == '-' && buffer.get(from + 23) == '-') {
+            long g0 = hex(buffer, from, from + 8);
+            long g1 = hex(buffer, from + 9, from + 13);
+            long g2 = hex(buffer, from + 14, from + 18);
+            long g3 = hex(buffer, from + 19, from + 23);
+            long g4 = hex(buffer, from + 24, from + UUID_LENGTH);
+            if ((g0 | g1 | g2 | g3 | g4) >= 0) {
+                return new UUID((g0 << 32) | (g1 << 16) | g2, (g3 << 48) | g4);
+            }
+        }
+        return UUID.fromString(string(buffer, from, to, cursor).substring(0, UUID_LENGTH));
+    }
+
+    // -1 si hay algún carácter que no es una cifra hexadecimal
+    private static long hex(ByteBuffer buffer, int from, int to) {
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            int digit = Character.digit(buffer.get(i), 16);
+            if (digit < 0) {
+                return -1;
+            }
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+
+    private static Modelo parseModelo(ByteBuffer buffer, int from, int to, Cursor cursor) {
+        for (Modelo modelo : MODELOS) {
+            if (equalsAscii(buffer, from, to, MODELO_NAMES[modelo.ordinal()])) {
+                return modelo;
+            }
+        }
+        return Modelo.valueOf(string(buffer, from, to, cursor));
+    }
+
+    // Un número sin signo ni exponente de hasta 15 cifras se representa exactamente, así que dividirlo por una potencia
+    // de diez exacta da el mismo double que Double.parseDouble
+    private static double parsePrecio(ByteBuffer buffer, int from, int to, Cursor cursor) {
+        long mantissa = 0;
+        int digits = 0;
+        int decimals = -1;
+        boolean fast = true;
+        for (int i = from; i < to && fast; i++) {
+            byte b = buffer.get(i);
+            if (b >= '0' && b <= '9') {
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+                if (decimals >= 0) {
+                    decimals++;
+                }
+            } else if (b == '.' && decimals < 0) {
+                decimals = 0;
+            } else {
+                fast = false;
+            }
+        }
+        if (fast && digits > 0 && digits <= MAX_FAST_DIGITS) {
+            return mantissa / POWERS_OF_TEN[Math.max(decimals, 0)];
+        }
+        return Double.parseDouble(string(buffer, from, to, cursor));
+    }
+
+    private static LocalDate parseFecha(ByteBuffer buffer, int from, int to, Cursor cursor) {
+        if (to - from == 10 && buffer.get(from + 4) == '-' && buffer.get(from + 7) == '-') {
+            int year = decimal(buffer, from, from + 4);
+            int month = decimal(buffer, from + 5, from + 7);
+            int day = decimal(buffer, from + 8, from + 10);
+            if (year >= 0 && month >= 0 && day >= 0) {
+                return LocalDate.of(year, month, day);
+            }
+        }
+        return LocalDate.parse(string(buffer, from, to, cursor));
+    }
+
+    private static int decimal(ByteBuffer buffer, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            byte b = buffer.get(i);
+            if (b < '0' || b > '9') {
+                return -1;
+            }
+            value = value * 10 + (b - '0');
+        }
+        return value;
+    }
+
+    private static boolean equalsAscii(ByteBuffer buffer, int from, int to, byte[] expected) {
+        if (to - from != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (buffer.get(from + i) != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String string(ByteBuffer buffer, int from, int to, Cursor cursor) {
+        int length = to - from;
+        if (cursor.scratch.length < length) {
+            cursor.scratch = new byte[Math.max(length, cursor.scratch.length * 2)];
+        }
+        buffer.get(from, cursor.scratch, 0, length);
+        return new String(cursor.scratch, 0, length, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,118 @@
+package dev.server.services;
+
+import dev.common.models.Funko;
+import dev.server.database.models.Modelo;
+
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Índices en memoria por modelo y por año de lanzamiento. Las lecturas no bloquean; las escrituras se serializan
+// para mover un funko de grupo de forma consistente cuando cambia su modelo o su fecha.
+class FunkoIndex implements CatalogueView {
+
+    private final Map<UUID, Funko> byId = new ConcurrentHashMap<>();
+    private final EnumMap<Modelo, Map<UUID, Funko>> byModelo = new EnumMap<>(Modelo.class);
+    private final Map<Integer, Map<UUID, Funko>> byYear = new ConcurrentHashMap<>();
+
+    FunkoIndex(Collection<Funko> funkos) {
+        for (Modelo modelo : Modelo.values()) {
+            byModelo.put(modelo, new ConcurrentHashMap<>());
+        }
+        funkos.forEach(this::insert);
+    }
+
+    @Override
+    public synchronized FunkoIndex insert(Funko funko) {
+        link(funko, byId.get(funko.codigo()));
+        return this;
+    }
+
+    @Override
+    public synchronized FunkoIndex update(Funko funko) {
+        Funko previous = byId.get(funko.codigo());
+        if (previous != null) {
+            link(funko, previous);
+        }
+        return this;
+    }
+
+    @Override
+    public synchronized FunkoIndex remove(UUID id) {
+        Funko previous = byId.remove(id);
+        if (previous != null) {
+            unlink(previous);
+        }
+        return this;
+    }
+
+    @Override
+    public synchronized FunkoIndex insertAll(Collection<Funko> funkos) {
+        funkos.forEach(this::insert);
+        return this;
+    }
+
+    @Override
+    public synchronized FunkoIndex updateAll(Collection<Funko> funkos) {
+        funkos.forEach(this::update);
+        return this;
+    }
+
+    @Override
+    public Optional<Funko> findById(UUID id) {
+        return Optional.ofNullable(byId.get(id));
+    }
+
+    @Override
+    public List<Funko> all() {
+        return List.copyOf(byId.values());
+    }
+
+    @Override
+    public List<Funko> byModelo(Modelo modelo) {
+        return List.copyOf(byModelo.get(modelo).values());
+    }
+
+    @Override
+    public List<Funko> releasedIn(int year) {
+        Map<UUID, Funko> funkos = byYear.get(year);
+        return funkos == null ? List.of() : List.copyOf(funkos.values());
+    }
+
+    @Override
+    public Map<Modelo, List<Funko>> groupedByModel() {
+        Map<Modelo, List<Funko>> groups = new EnumMap<>(Modelo.class);
+        byModelo.forEach((modelo, funkos) -> {
+            if (!funkos.isEmpty()) {
+                groups.put(modelo, List.copyOf(funkos.values()));
+            }
+        });
+        return groups;
+    }
+
+    @Override
+    public int size() {
+        return byId.size();
+    }
+
+    private void link(Funko funko, Funko previous) {
+        if (previous != null) {
+            unlink(previous);
+        }
+        byId.put(funko.codigo(), funko);
+        byModelo.get(funko.modelo()).put(funko.codigo(), funko);
+        byYear.computeIfAbsent(funko.fechaLanzamiento().getYear(), year -> new ConcurrentHashMap<>()).put(funko.codigo(), funko);
+    }
+
+    private void unlink(Funko funko) {
+        byModelo.get(funko.modelo()).remove(funko.codigo());
+        byYear.computeIfPresent(funko.fechaLanzamiento().getYear(), (year, funkos) -> {
+            funkos.remove(funko.codigo());
+            return funkos.isEmpty() ? null : funkos;
+        });
+    }
+}
@@ -2,12 +2,17 @@ package dev.server.services;
 
 
 import dev.common.models.Funko;
+import dev.common.models.Page;
 import dev.server.database.models.Modelo;
+import dev.server.repositories.WriteResult;
+import dev.server.services.cache.CacheStats;
+import org.reactivestreams.Publisher;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.io.IOException;
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -15,17 +20,32 @@ import java.util.UUID;
 public interface FunkoService {
     Flux<Funko> findAll() throws SQLException, IOException;
 
-    Mono<Void> importCsv();
+    Mono<ImportReport> importCsv();
 
     Mono<Funko> findById(UUID id) throws SQLException, IOException;
 
+    Flux<Funko> findAllById(Collection<UUID> ids) throws SQLException, IOException;
+
+    Mono<Page<Funko>> findPage(String token, int size);
+
     Mono<Funko> save(Funko funko) throws SQLException, IOException;
 
     Mono<Boolean> delete(Funko funko) throws SQLException, IOException;
 
     Mono<Funko> update(Funko funko) throws SQLException, IOException;
+
+    Flux<WriteResult<Funko>> saveAll(Publisher<Funko> funkos);
+
+    Flux<WriteResult<Funko>> updateAll(Publisher<Funko> funkos);
+
     Mono<Map<Modelo, List<Funko>>> groupedByModel() throws SQLException, IOException;
+    Flux<Funko> findByModelo(Modelo modelo) throws SQLException, IOException;
     Flux<Funko> releasedIn(int year) throws SQLException, IOException;
 
+    CacheStats cacheStats();
+
+    // Crea los índices en memoria, si el modo de lectura los usa, sin esperar a la primera consulta que los necesita
+    Mono<Void> buildIndexes();
+
 
 }
\ No newline at end of file
@@ -2,93 +2,304 @@ package dev.server.services;
 
 
 import dev.common.models.Funko;
+import dev.common.models.Page;
 import dev.server.database.models.Modelo;
 import dev.server.exceptions.FunkoNoGuardado;
 import dev.server.repositories.FunkosReactiveRepo;
+import dev.server.repositories.WriteResult;
+import dev.server.services.cache.CacheStats;
 import dev.server.services.cache.FunkosCache;
+import dev.server.services.cache.NegativeCache;
 import dev.server.exceptions.FunkoNoEncontrado;
+import org.reactivestreams.Publisher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.sql.SQLException;
+import java.time.Duration;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
 
 public class FunkoServiceImpl implements FunkoService {
+
+    // DATABASE hace todas las lecturas en la base de datos (con la cache delante para findById) y filtra por modelo
+    // y año en la consulta. INDEXED lee igual findAll y findById, pero guarda índices en memoria por modelo y año.
+    // SNAPSHOT sirve todas las lecturas desde una copia inmutable de la tabla en memoria.
+    public enum ReadMode {DATABASE, INDEXED, SNAPSHOT}
+
+    private static final int MAX_INDEX_BUILDS = 3;
+    private static final int IMPORT_BATCH_SIZE = 500;
+    private static final int IMPORT_CONCURRENCY = 4;
+    // Resultados de saveAll/updateAll que se aplican juntos a la cache y a los índices
+    private static final int BULK_APPLY_SIZE = 500;
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
     private final Logger logger = LoggerFactory.getLogger(FunkoServiceImpl.class);
     private final FunkosReactiveRepo funkosReactiveRepo;
     private final FunkosCache<UUID, Funko> funkosCache;
+    private final ReadMode readMode;
+    private final NegativeCache missingFunkos;
+    private final Map<UUID, Mono<Funko>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder issuedLoads = new LongAdder();
+    private final LongAdder coalescedLoads = new LongAdder();
+    private final FunkoCsvParser csvParser = new FunkoCsvParser();
+    private final Object indexLock = new Object();
+    private final List<UnaryOperator<CatalogueView>> pendingIndexWrites = new ArrayList<>();
+    private volatile CatalogueView index;
+    private Mono<CatalogueView> indexBuild;
 
     public FunkoServiceImpl(FunkosReactiveRepo funkosReactiveRepo, FunkosCache<UUID, Funko> funkosCache) {
+        this(funkosReactiveRepo, funkosCache, ReadMode.DATABASE);
+    }
+
+    public FunkoServiceImpl(FunkosReactiveRepo funkosReactiveRepo, FunkosCache<UUID, Funko> funkosCache, ReadMode readMode) {
+        this(funkosReactiveRepo, funkosCache, readMode, null);
+    }
+
+    public FunkoServiceImpl(FunkosReactiveRepo funkosReactiveRepo, FunkosCache<UUID, Funko> funkosCache, ReadMode readMode, NegativeCache missingFunkos) {
         this.funkosReactiveRepo = funkosReactiveRepo;
         this.funkosCache = funkosCache;
+        this.readMode = readMode == null ? ReadMode.DATABASE : readMode;
+        this.missingFunkos = missingFunkos == null ? new NegativeCache(1024, Duration.ofSeconds(60)) : missingFunkos;
     }
 
     @Override
     public Flux<Funko> findAll() throws SQLException, IOException {
+        if (readMode == ReadMode.SNAPSHOT) {
+            return index().flatMapIterable(CatalogueView::all);
+        }
         return funkosReactiveRepo.findAll();
     }
 
+    // El fichero se lee en paralelo con FunkoCsvParser y las filas se insertan en lotes con saveBatch (un INSERT de
+    // una fila con un juego de parámetros por funko), cada uno en su transacción y con varios lotes a la vez. El Mono termina cuando todas las filas están guardadas. Se rechazan las líneas mal
+    // formadas y los códigos repetidos en el fichero.
     @Override
-    public Mono<Void> importCsv() {
+    public Mono<ImportReport> importCsv() {
 
         final String filePath = "data" + File.separator + "funkos.csv";
         if (!Files.exists(Path.of(filePath))) {
             logger.error("El fichero " + filePath + " no existe");
-            return Mono.empty();
+            return Mono.just(ImportReport.EMPTY);
         }
-        final String delimiter = ",";
-        Flux.using(
-                () -> new BufferedReader(new FileReader(filePath)),
-                reader -> Flux.fromStream(reader.lines().skip(1).map(line -> {
-                    String[] values = line.split(delimiter);
-                    UUID uuid = UUID.fromString(values[0].substring(0, 35));
-                    return new Funko(uuid, values[1], Modelo.valueOf(values[2]), Double.parseDouble(values[3]), LocalDate.parse(values[4]));
-                })),
-                reader -> {
-                    try {
-                        reader.close();
-                    } catch (IOException e) {
-                        logger.error("Error al cerrar el reader", e);
-                    }
-                }).subscribe(funko -> {
-            try {
-                save(funko).subscribe();
-            } catch (SQLException | IOException e) {
-                logger.error("Error al guardar el funko " + funko, e);
-            }
-        });
 
-        return Mono.empty();
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            AtomicLong rejected = new AtomicLong();
+            Set<UUID> seen = new HashSet<>();
 
+            return csvParser.parse(Path.of(filePath), (error, offset) -> {
+                        logger.warn("Fila del CSV en el byte " + offset + " rechazada: " + error.getMessage());
+                        rejected.incrementAndGet();
+                    })
+                    .filter(funko -> {
+                        if (seen.add(funko.codigo())) {
+                            return true;
+                        }
+                        logger.warn("Fila del CSV rechazada: codigo repetido " + funko.codigo());
+                        rejected.incrementAndGet();
+                        return false;
+                    })
+                    .buffer(IMPORT_BATCH_SIZE)
+                    .flatMap(batch -> importBatch(batch, rejected), IMPORT_CONCURRENCY)
+                    .reduce(0L, Long::sum)
+                    .map(imported -> new ImportReport(imported, rejected.get(), Duration.ofNanos(System.nanoTime() - start)))
+                    .doOnNext(report -> logger.info(String.format("CSV importado: %d funkos en %d ms (%.0f filas/s), %d lineas rechazadas",
+                            report.imported(), report.elapsed().toMillis(), report.rowsPerSecond(), report.rejected())));
+        });
+    }
 
+    // Si el lote falla (por ejemplo, un código que ya estaba en la tabla) se reintenta fila a fila para rechazar solo
+    // las que no se pueden guardar
+    private Mono<Long> importBatch(List<Funko> batch, AtomicLong rejected) {
+        return funkosReactiveRepo.saveBatch(batch)
+                .doOnNext(saved -> afterInsertAll(batch))
+                .onErrorResume(e -> {
+                    logger.warn("Lote de " + batch.size() + " funkos rechazado, se guardan uno a uno: " + e.getMessage());
+                    return Flux.fromIterable(batch)
+                            .concatMap(funko -> Mono.defer(() -> {
+                                        try {
+                                            return funkosReactiveRepo.save(funko);
+                                        } catch (SQLException | IOException ex) {
+                                            return Mono.error(ex);
+                                        }
+                                    })
+                                    .onErrorResume(ex -> {
+                                        logger.warn("Funko " + funko.codigo() + " del CSV rechazado: " + ex.getMessage());
+                                        rejected.incrementAndGet();
+                                        return Mono.empty();
+                                    }))
+                            .collectList()
+                            .doOnNext(this::afterInsertAll)
+                            .map(saved -> (long) saved.size());
+                });
     }
 
     @Override
     public Mono<Funko> findById(UUID id) throws SQLException, IOException {
+        if (readMode == ReadMode.SNAPSHOT) {
+            return index().flatMap(index -> Mono.justOrEmpty(index.findById(id)))
+                    .switchIfEmpty(Mono.error(new FunkoNoEncontrado("Funko con id " + id + " no encontrado")));
+        }
+        Mono<Funko> fromRepo = funkosReactiveRepo.findById(id);
         return funkosCache.get(id)
-                .switchIfEmpty(
-                        funkosReactiveRepo.findById(id)
-                                .flatMap(funko -> funkosCache.put(funko.codigo(), funko).then(Mono.just(funko))))
+                .switchIfEmpty(Mono.defer(() -> missingFunkos.contains(id) ? Mono.empty() : load(id, fromRepo)))
                 .switchIfEmpty(Mono.error(new FunkoNoEncontrado("Funko con id " + id + " no encontrado")));
     }
 
+    // Los fallos simultáneos de cache para el mismo id comparten una única consulta a la base de datos. Si no
+    // encuentra el funko se recuerda en missingFunkos, salvo que se haya guardado alguno mientras tanto.
+    private Mono<Funko> load(UUID id, Mono<Funko> fromRepo) {
+        long version = funkosCache.version(id);
+        long missingVersion = missingFunkos.version();
+        AtomicReference<Mono<Funko>> self = new AtomicReference<>();
+        Mono<Funko> load = Mono.defer(() -> {
+                    long start = System.nanoTime();
+                    return fromRepo
+                            .doOnSuccess(funko -> {
+                                funkosCache.recordLoad(System.nanoTime() - start, funko != null);
+                                if (funko == null) {
+                                    missingFunkos.putIfCurrent(id, missingVersion);
+                                }
+                            })
+                            .doOnError(e -> funkosCache.recordLoad(System.nanoTime() - start, false));
+                })
+                .doOnNext(funko -> funkosCache.putIfCurrent(id, funko, version))
+                .doFinally(signal -> inFlight.remove(id, self.get()))
+                .cache();
+        self.set(load);
+
+        Mono<Funko> existing = inFlight.putIfAbsent(id, load);
+        if (existing != null) {
+            coalescedLoads.increment();
+            return existing;
+        }
+        issuedLoads.increment();
+        return load;
+    }
+
+    // Devuelve los funkos que existen en el orden pedido, sin repetidos. Los que no están en la cache se buscan con
+    // una sola consulta y se guardan en ella.
+    @Override
+    public Flux<Funko> findAllById(Collection<UUID> ids) throws SQLException, IOException {
+        Set<UUID> unique = new LinkedHashSet<>(ids);
+        if (readMode == ReadMode.SNAPSHOT) {
+            return index().flatMapIterable(index -> unique.stream().flatMap(id -> index.findById(id).stream()).toList());
+        }
+        return Flux.fromIterable(unique)
+                .concatMap(id -> funkosCache.get(id))
+                .collectMap(Funko::codigo)
+                .flatMapMany(cached -> {
+                    List<UUID> misses = unique.stream()
+                            .filter(id -> !cached.containsKey(id) && !missingFunkos.contains(id))
+                            .toList();
+                    return loadAll(misses).map(loaded -> {
+                        Map<UUID, Funko> found = new HashMap<>(cached);
+                        found.putAll(loaded);
+                        return unique.stream().map(found::get).filter(Objects::nonNull).toList();
+                    });
+                })
+                .flatMapIterable(funkos -> funkos);
+    }
+
+    private Mono<Map<UUID, Funko>> loadAll(List<UUID> ids) {
+        if (ids.isEmpty()) {
+            return Mono.just(Map.of());
+        }
+        Map<UUID, Long> versions = new HashMap<>();
+        ids.forEach(id -> versions.put(id, funkosCache.version(id)));
+        long missingVersion = missingFunkos.version();
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return funkosReactiveRepo.findAllById(ids)
+                    .collectMap(Funko::codigo)
+                    .doOnNext(found -> {
+                        long elapsed = (System.nanoTime() - start) / ids.size();
+                        issuedLoads.increment();
+                        for (UUID id : ids) {
+                            Funko funko = found.get(id);
+                            funkosCache.recordLoad(elapsed, funko != null);
+                            if (funko != null) {
+                                funkosCache.putIfCurrent(id, funko, versions.get(id));
+                            } else {
+                                missingFunkos.putIfCurrent(id, missingVersion);
+                            }
+                        }
+                    })
+                    .doOnError(e -> funkosCache.recordLoad(System.nanoTime() - start, false));
+        });
+    }
+
+    @Override
+    public CacheStats cacheStats() {
+        return funkosCache.stats();
+    }
+
+    public long getIssuedLoads() {
+        return issuedLoads.sum();
+    }
+
+    public long getCoalescedLoads() {
+        return coalescedLoads.sum();
+    }
+
+    public long getMissingHits() {
+        return missingFunkos.getHits();
+    }
+
+
+    // Siempre se pagina en la base de datos, también en modo SNAPSHOT, porque las páginas siguen el id de cada fila
+    @Override
+    public Mono<Page<Funko>> findPage(String token, int size) {
+        return funkosReactiveRepo.findPage(token, size <= 0 ? DEFAULT_PAGE_SIZE : Math.min(size, MAX_PAGE_SIZE));
+    }
 
     @Override
     public Mono<Funko> save(Funko funko) throws SQLException, IOException {
-        return funkosReactiveRepo.save(funko);
+        return funkosReactiveRepo.save(funko).doOnNext(this::afterInsert);
+    }
+
+    // Una carga en curso empezó antes de la escritura y devolvería el valor anterior; las búsquedas siguientes
+    // lanzan una nueva en vez de unirse a ella
+    private void forgetLoad(UUID id) {
+        inFlight.remove(id);
+    }
+
+    private void afterInsert(Funko saved) {
+        forgetLoad(saved.codigo());
+        missingFunkos.invalidate(saved.codigo());
+        indexWrite(index -> index.insert(saved));
+    }
+
+    // Un lote entero en una sola escritura de los índices: en modo SNAPSHOT es una sola copia del catálogo
+    private void afterInsertAll(List<Funko> saved) {
+        saved.forEach(funko -> {
+            forgetLoad(funko.codigo());
+            missingFunkos.invalidate(funko.codigo());
+        });
+        indexWrite(index -> index.insertAll(saved));
     }
 
     @Override
@@ -100,7 +311,13 @@ public class FunkoServiceImpl implements FunkoService {
                     } catch (SQLException | IOException e) {
                         return Mono.error(new FunkoNoGuardado("Error al actualizar el funko " + funko));
                     }
-                }).thenReturn(true);
+                })
+                .doOnNext(deleted -> {
+                    forgetLoad(funko.codigo());
+                    funkosCache.invalidate(funko.codigo());
+                    indexWrite(index -> index.remove(funko.codigo()));
+                })
+                .thenReturn(true);
     }
 
 
@@ -113,18 +330,146 @@ public class FunkoServiceImpl implements FunkoService {
                     } catch (SQLException | IOException e) {
                         return Mono.error(new FunkoNoGuardado("Error al actualizar el funko " + funko));
                     }
-                }).thenReturn(funko);
+                })
+                .doOnNext(this::afterUpdate)
+                .thenReturn(funko);
+    }
+
+    private void afterUpdate(Funko updated) {
+        forgetLoad(updated.codigo());
+        funkosCache.writeThrough(updated.codigo(), updated);
+        indexWrite(index -> index.update(updated));
+    }
+
+    private void afterUpdateAll(List<Funko> updated) {
+        updated.forEach(funko -> {
+            forgetLoad(funko.codigo());
+            funkosCache.writeThrough(funko.codigo(), funko);
+        });
+        indexWrite(index -> index.updateAll(updated));
+    }
+
+    // La cache, los índices y la cache de inexistentes solo se actualizan con los funkos que se han escrito, por
+    // lotes de resultados
+    @Override
+    public Flux<WriteResult<Funko>> saveAll(Publisher<Funko> funkos) {
+        return funkosReactiveRepo.saveAll(funkos)
+                .buffer(BULK_APPLY_SIZE)
+                .doOnNext(results -> afterInsertAll(written(results)))
+                .flatMapIterable(results -> results);
+    }
+
+    @Override
+    public Flux<WriteResult<Funko>> updateAll(Publisher<Funko> funkos) {
+        return funkosReactiveRepo.updateAll(funkos)
+                .buffer(BULK_APPLY_SIZE)
+                .doOnNext(results -> afterUpdateAll(written(results)))
+                .flatMapIterable(results -> results);
+    }
+
+    private static List<Funko> written(List<WriteResult<Funko>> results) {
+        return results.stream().filter(WriteResult::isWritten).map(WriteResult::entity).toList();
     }
 
 
     @Override
     public Mono<Map<Modelo, List<Funko>>> groupedByModel() throws SQLException, IOException {
-        return findAll().collect(Collectors.groupingBy(Funko::modelo));
+        if (readMode == ReadMode.DATABASE) {
+            return findAll().collect(Collectors.groupingBy(Funko::modelo));
+        }
+        return index().map(CatalogueView::groupedByModel);
+    }
+
+    // Se filtra en la base de datos en modo DATABASE, y en modo INDEXED mientras se crean los índices al arrancar
+    @Override
+    public Flux<Funko> findByModelo(Modelo modelo) throws SQLException, IOException {
+        if (usesDatabaseFilters()) {
+            return funkosReactiveRepo.findByModelo(modelo);
+        }
+        return index().flatMapIterable(index -> index.byModelo(modelo));
     }
 
     @Override
     public Flux<Funko> releasedIn(int year) throws SQLException, IOException {
-        return findAll().filter(funko -> funko.fechaLanzamiento().getYear() == year);
+        if (usesDatabaseFilters()) {
+            return funkosReactiveRepo.findByReleaseYear(year);
+        }
+        return index().flatMapIterable(index -> index.releasedIn(year));
+    }
+
+    private boolean usesDatabaseFilters() {
+        return readMode == ReadMode.DATABASE || readMode == ReadMode.INDEXED && index == null;
+    }
+
+    // En modo DATABASE no hay nada que crear
+    @Override
+    public Mono<Void> buildIndexes() {
+        return readMode == ReadMode.DATABASE ? Mono.empty() : index().then();
+    }
+
+    // Los índices se construyen al arrancar o con la primera consulta que los necesita. Si se confirma alguna
+    // escritura mientras se lee la tabla no se sabe si la lectura la incluye, así que se vuelve a leer; tras varios
+    // intentos se aplican encima de la lectura.
+    private Mono<CatalogueView> index() {
+        CatalogueView current = index;
+        if (current != null) {
+            return Mono.just(current);
+        }
+        synchronized (indexLock) {
+            if (indexBuild == null) {
+                indexBuild = buildIndex(1)
+                        .doOnError(e -> {
+                            synchronized (indexLock) {
+                                indexBuild = null;
+                                pendingIndexWrites.clear();
+                            }
+                        })
+                        .cache();
+            }
+            return indexBuild;
+        }
+    }
+
+    private Mono<CatalogueView> buildIndex(int attempt) {
+        return Mono.defer(() -> {
+            try {
+                return funkosReactiveRepo.findAll().collectList();
+            } catch (SQLException | IOException e) {
+                return Mono.error(e);
+            }
+        }).flatMap(funkos -> {
+            synchronized (indexLock) {
+                if (pendingIndexWrites.isEmpty() || attempt >= MAX_INDEX_BUILDS) {
+                    return Mono.just(publishIndex(funkos));
+                }
+                pendingIndexWrites.clear();
+            }
+            logger.debug("Escrituras durante la creacion de los indices, releyendo funkos");
+            return buildIndex(attempt + 1);
+        });
+    }
+
+    private CatalogueView publishIndex(List<Funko> funkos) {
+        CatalogueView built = readMode == ReadMode.SNAPSHOT ? new CatalogueSnapshot(funkos) : new FunkoIndex(funkos);
+        for (UnaryOperator<CatalogueView> write : pendingIndexWrites) {
+            built = write.apply(built);
+        }
+        pendingIndexWrites.clear();
+        index = built;
+        logger.info("Indices de funkos creados con " + built.size() + " funkos");
+        return built;
+    }
+
+    // Las escrituras se serializan para que ninguna copia nueva del catálogo pise a otra; las lecturas solo leen
+    // la referencia publicada
+    private void indexWrite(UnaryOperator<CatalogueView> write) {
+        synchronized (indexLock) {
+            if (index != null) {
+                index = write.apply(index);
+            } else if (indexBuild != null) {
+                pendingIndexWrites.add(write);
+            }
+        }
     }
 
 
@@ -0,0 +1,12 @@
+package dev.server.services;
+
+import java.time.Duration;
+
+public record ImportReport(long imported, long rejected, Duration elapsed) {
+
+    public static final ImportReport EMPTY = new ImportReport(0, 0, Duration.ZERO);
+
+    public double rowsPerSecond() {
+        return elapsed.isZero() ? 0.0 : imported * 1_000_000_000.0 / elapsed.toNanos();
+    }
+}
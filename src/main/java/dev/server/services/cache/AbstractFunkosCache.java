@@ -0,0 +1,233 @@
+package dev.server.services.cache;
+
+import dev.common.models.Funko;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+public abstract class AbstractFunkosCache implements FunkosCache<UUID, Funko> {
+
+    protected static final int SWEEP_BATCH = 64;
+    private static final int VERSION_STRIPES = 1024;
+
+    protected final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final ExpiryPolicy policy;
+    private final Function<UUID, Mono<Funko>> loader;
+    private final LongSupplier ticker;
+    private final ScheduledExecutorService executorService;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loadSuccesses = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder totalLoadTime = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    // Cada escritura o invalidación sube la versión de la franja de su id; una carga desde la base de datos solo
+    // se guarda si la versión no ha cambiado desde que empezó, así nunca pisa un valor más reciente
+    private final AtomicLongArray versions = new AtomicLongArray(VERSION_STRIPES);
+    private final Object[] versionLocks = new Object[VERSION_STRIPES];
+    private final AtomicBoolean started = new AtomicBoolean();
+
+
+    protected AbstractFunkosCache(ExpiryPolicy policy, Function<UUID, Mono<Funko>> loader, LongSupplier ticker) {
+        this.policy = policy;
+        this.loader = loader;
+        this.ticker = ticker;
+        for (int i = 0; i < VERSION_STRIPES; i++) {
+            versionLocks[i] = new Object();
+        }
+
+        this.executorService = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "funkos-cache");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // La limpieza periódica se lanza después de construir la cache: si empezara en el constructor, expireEntries
+    // podría ejecutarse antes de que la subclase inicialice sus campos
+    @Override
+    public void start() {
+        if (started.compareAndSet(false, true)) {
+            executorService.scheduleWithFixedDelay(() -> expireEntries(ticker.getAsLong()), 1, 1, TimeUnit.SECONDS);
+        }
+    }
+
+    protected abstract CacheEntry read(UUID id);
+
+    protected abstract void write(UUID id, CacheEntry entry);
+
+    protected abstract void evict(UUID id);
+
+    // Retira la entrada solo si sigue siendo la que se leyó; false si ya se ha sustituido o retirado
+    protected abstract boolean evict(UUID id, CacheEntry expected);
+
+    // Revisa como mucho SWEEP_BATCH entradas en cada pasada para no bloquear la cache
+    protected abstract void expireEntries(long now);
+
+    @Override
+    public Mono<Void> put(UUID id, Funko value) {
+        logger.debug("Añadiendo funko a la cache con id: " + id);
+        return Mono.fromRunnable(() -> writeThrough(id, value));
+    }
+
+    @Override
+    public Mono<Funko> get(UUID id) {
+        logger.debug("Obteniendo funko de la cache con id: " + id);
+        return Mono.fromCallable(() -> lookup(id));
+    }
+
+    @Override
+    public Mono<Void> remove(UUID id) {
+        logger.debug("Eliminando funko de la cache con id: " + id);
+        return Mono.fromRunnable(() -> invalidate(id));
+    }
+
+    @Override
+    public long version(UUID id) {
+        return versions.get(stripe(id));
+    }
+
+    @Override
+    public boolean putIfCurrent(UUID id, Funko value, long version) {
+        int stripe = stripe(id);
+        synchronized (versionLocks[stripe]) {
+            if (versions.get(stripe) != version) {
+                logger.debug("Descartando carga obsoleta del funko con id: " + id);
+                return false;
+            }
+            write(id, new CacheEntry(value, ticker.getAsLong(), version));
+            return true;
+        }
+    }
+
+    @Override
+    public void writeThrough(UUID id, Funko value) {
+        int stripe = stripe(id);
+        synchronized (versionLocks[stripe]) {
+            write(id, new CacheEntry(value, ticker.getAsLong(), versions.incrementAndGet(stripe)));
+        }
+    }
+
+    @Override
+    public void invalidate(UUID id) {
+        int stripe = stripe(id);
+        synchronized (versionLocks[stripe]) {
+            versions.incrementAndGet(stripe);
+            evict(id);
+        }
+    }
+
+    @Override
+    public void recordLoad(long elapsedNanos, boolean success) {
+        (success ? loadSuccesses : loadFailures).increment();
+        totalLoadTime.add(elapsedNanos);
+    }
+
+    @Override
+    public CacheStats stats() {
+        return new CacheStats(hits.sum(), misses.sum(), loadSuccesses.sum(), loadFailures.sum(), totalLoadTime.sum(),
+                evictions.sum(), expirations.sum(), size());
+    }
+
+    @Override
+    public void shutdown() {
+        logger.info("quitando cache");
+        executorService.shutdown();
+        logger.info("Estadisticas de la cache: {}", stats());
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    protected void touch(UUID id, CacheEntry entry, long now) {
+        entry.accessedAt = now;
+    }
+
+    // Solo la primera lectura que ve la entrada pendiente de refresco lanza la recarga
+    protected boolean startRefresh(UUID id, CacheEntry entry) {
+        return entry.startRefresh();
+    }
+
+    // Para las entradas que se retiran por falta de espacio, no por caducar
+    protected void recordEviction() {
+        evictions.increment();
+    }
+
+    protected void recordExpiration() {
+        expirations.increment();
+    }
+
+    protected boolean isExpired(CacheEntry entry, long now) {
+        return policy.isExpired(entry, now);
+    }
+
+    private Funko lookup(UUID id) {
+        long now = ticker.getAsLong();
+        CacheEntry entry = read(id);
+
+        if (entry == null || policy.isExpired(entry, now)) {
+            if (entry != null && expire(id, entry)) {
+                recordExpiration();
+            }
+            misses.increment();
+            return null;
+        }
+
+        hits.increment();
+        touch(id, entry, now);
+        if (loader != null && policy.shouldRefresh(entry, now) && startRefresh(id, entry)) {
+            refresh(id, entry.version);
+        }
+        return entry.funko;
+    }
+
+    // Con el bloqueo de la franja ninguna escritura del mismo id puede colarse entre la lectura y el borrado, y si ya
+    // se había colado antes el valor nuevo no coincide con el leído y se conserva
+    private boolean expire(UUID id, CacheEntry entry) {
+        synchronized (versionLocks[stripe(id)]) {
+            return evict(id, entry);
+        }
+    }
+
+    // Se recarga en segundo plano mientras se sigue sirviendo el valor actual
+    private void refresh(UUID id, long version) {
+        logger.debug("Refrescando funko de la cache con id: " + id);
+        long start = System.nanoTime();
+        loader.apply(id)
+                .switchIfEmpty(Mono.fromRunnable(() -> {
+                    recordLoad(System.nanoTime() - start, false);
+                    invalidate(id);
+                }))
+                .subscribe(
+                        funko -> {
+                            recordLoad(System.nanoTime() - start, true);
+                            putIfCurrent(id, funko, version);
+                        },
+                        e -> {
+                            recordLoad(System.nanoTime() - start, false);
+                            logger.error("Error al refrescar el funko con id " + id, e);
+                        });
+    }
+
+    private static int stripe(UUID id) {
+        int hash = id.hashCode();
+        return (hash ^ (hash >>> 16)) & (VERSION_STRIPES - 1);
+    }
+}
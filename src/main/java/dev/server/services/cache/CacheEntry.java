@@ -0,0 +1,25 @@
+package dev.server.services.cache;
+
+import dev.common.models.Funko;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+final class CacheEntry {
+
+    final Funko funko;
+    final long writtenAt;
+    final long version;
+    volatile long accessedAt;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    CacheEntry(Funko funko, long now, long version) {
+        this.funko = funko;
+        this.writtenAt = now;
+        this.version = version;
+        this.accessedAt = now;
+    }
+
+    boolean startRefresh() {
+        return refreshing.compareAndSet(false, true);
+    }
+}
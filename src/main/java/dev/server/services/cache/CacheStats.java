@@ -0,0 +1,17 @@
+package dev.server.services.cache;
+
+// Foto de los contadores de una cache. Las cargas incluyen las de los fallos de cache y los refrescos anticipados;
+// una carga que no encuentra el funko cuenta como fallida. Los tiempos van en nanosegundos.
+public record CacheStats(long hits, long misses, long loadSuccesses, long loadFailures, long totalLoadTime,
+                         long evictions, long expirations, int size) {
+
+    public double hitRate() {
+        long requests = hits + misses;
+        return requests == 0 ? 1.0 : (double) hits / requests;
+    }
+
+    public double averageLoadPenalty() {
+        long loads = loadSuccesses + loadFailures;
+        return loads == 0 ? 0.0 : (double) totalLoadTime / loads;
+    }
+}
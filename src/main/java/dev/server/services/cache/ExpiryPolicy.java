@@ -0,0 +1,29 @@
+package dev.server.services.cache;
+
+import java.time.Duration;
+import java.util.Properties;
+
+// Una duración a cero desactiva esa caducidad o el refresco anticipado
+public record ExpiryPolicy(Duration expireAfterWrite, Duration expireAfterAccess, Duration refreshAfterWrite) {
+
+    public static final ExpiryPolicy DEFAULT = new ExpiryPolicy(Duration.ZERO, Duration.ofSeconds(90), Duration.ZERO);
+
+    public static ExpiryPolicy fromProperties(Properties props) {
+        return new ExpiryPolicy(
+                Duration.ofSeconds(Long.parseLong(props.getProperty("cache.expireAfterWrite", "0"))),
+                Duration.ofSeconds(Long.parseLong(props.getProperty("cache.expireAfterAccess", "90"))),
+                Duration.ofSeconds(Long.parseLong(props.getProperty("cache.refreshAfterWrite", "0"))));
+    }
+
+    boolean isExpired(CacheEntry entry, long now) {
+        return exceeded(expireAfterWrite, now - entry.writtenAt) || exceeded(expireAfterAccess, now - entry.accessedAt);
+    }
+
+    boolean shouldRefresh(CacheEntry entry, long now) {
+        return exceeded(refreshAfterWrite, now - entry.writtenAt);
+    }
+
+    private static boolean exceeded(Duration limit, long elapsed) {
+        return !limit.isZero() && elapsed >= limit.toNanos();
+    }
+}
@@ -9,8 +9,23 @@ public interface FunkosCache<UUID, Funko> {
 
     Mono<Void> remove(UUID key);
 
+    long version(UUID key);
+
+    boolean putIfCurrent(UUID key, Funko value, long version);
+
+    void writeThrough(UUID key, Funko value);
+
+    void invalidate(UUID key);
+
+    void recordLoad(long elapsedNanos, boolean success);
+
+    CacheStats stats();
+
     void clear();
 
+    // Arranca las tareas en segundo plano de la cache, como la limpieza de caducados
+    void start();
+
     void shutdown();
 
     int size();
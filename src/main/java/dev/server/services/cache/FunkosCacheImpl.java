@@ -2,56 +2,81 @@ package dev.server.services.cache;
 
 
 import dev.common.models.Funko;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import reactor.core.publisher.Mono;
 
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
 
-public class FunkosCacheImpl implements FunkosCache<UUID, Funko>{
+public class FunkosCacheImpl extends AbstractFunkosCache {
 
-    private final Logger logger = LoggerFactory.getLogger(FunkosCacheImpl.class);
-
-    private final int CACHE_SIZE = 15;
-    private final Map<UUID, Funko> cache;
-    private final ScheduledExecutorService executorService;
+    private final int CACHE_SIZE;
+    private final Map<UUID, CacheEntry> cache;
 
 
     public FunkosCacheImpl(){
+        this(15);
+    }
+
+    public FunkosCacheImpl(int capacity){
+        this(capacity, ExpiryPolicy.DEFAULT, null);
+    }
+
+    public FunkosCacheImpl(int capacity, ExpiryPolicy policy, Function<UUID, Mono<Funko>> loader){
+        this(capacity, policy, loader, System::nanoTime);
+    }
+
+    FunkosCacheImpl(int capacity, ExpiryPolicy policy, Function<UUID, Mono<Funko>> loader, LongSupplier ticker){
+        super(policy, loader, ticker);
+        this.CACHE_SIZE = capacity;
         this.cache = Collections.synchronizedMap(new LinkedHashMap<>(CACHE_SIZE, 0.75f, true) {
             @Override
-            protected boolean removeEldestEntry(Map.Entry<UUID, Funko> eldest) {
-                return size() > CACHE_SIZE;
+            protected boolean removeEldestEntry(Map.Entry<UUID, CacheEntry> eldest) {
+                if (size() > CACHE_SIZE) {
+                    recordEviction();
+                    return true;
+                }
+                return false;
             }
         });
+    }
 
-        this.executorService = Executors.newSingleThreadScheduledExecutor();
-        this.executorService.scheduleAtFixedRate(this::clear, 90, 90, TimeUnit.SECONDS);
+    @Override
+    protected CacheEntry read(UUID id) {
+        return cache.get(id);
+    }
 
+    @Override
+    protected void write(UUID id, CacheEntry entry) {
+        cache.put(id, entry);
     }
 
     @Override
-    public Mono<Void> put(UUID id, Funko value) {
-        logger.info("Añadiendo funko a la cache con id: "+id);
-        return Mono.fromRunnable(() -> cache.put(id, value));
+    protected void evict(UUID id) {
+        cache.remove(id);
     }
 
     @Override
-    public Mono<Funko> get(UUID id) {
-        logger.info("Obteniendo funko de la cache con id: "+id);
-        return Mono.fromCallable(() -> cache.get(id));
+    protected boolean evict(UUID id, CacheEntry expected) {
+        return cache.remove(id, expected);
     }
 
+    // Se recorre desde la entrada usada hace más tiempo, que es la primera en caducar por acceso
     @Override
-    public Mono<Void> remove(UUID id) {
-        logger.info("Eliminando funko de la cache con id: "+id);
-        return Mono.fromRunnable(() -> cache.remove(id));
+    protected void expireEntries(long now) {
+        synchronized (cache) {
+            Iterator<CacheEntry> entries = cache.values().iterator();
+            for (int i = 0; i < SWEEP_BATCH && entries.hasNext(); i++) {
+                if (isExpired(entries.next(), now)) {
+                    entries.remove();
+                    recordExpiration();
+                }
+            }
+        }
     }
 
     @Override
@@ -61,11 +86,6 @@ public class FunkosCacheImpl implements FunkosCache<UUID, Funko>{
     }
 
     @Override
-    public void shutdown() {
-        logger.info("quitando cache");
-        executorService.shutdown();
-    }
-
     public int size() {
         return cache.size();
     }
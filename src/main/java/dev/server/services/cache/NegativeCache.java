@@ -0,0 +1,84 @@
+package dev.server.services.cache;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+// Códigos que se han buscado en la base de datos sin encontrarlos, para no repetir la consulta. Se guardan como
+// mucho maxSize y cada uno caduca a los ttl por si la fila aparece por otro camino que no pase por save.
+public class NegativeCache {
+
+    private final int maxSize;
+    private final long ttl;
+    private final LongSupplier ticker;
+    private final Map<UUID, Long> missing;
+    // Sube con cada invalidación; una búsqueda vacía que empezó antes no se guarda
+    private final AtomicLong version = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+
+
+    public NegativeCache(int maxSize, Duration ttl) {
+        this(maxSize, ttl, System::nanoTime);
+    }
+
+    NegativeCache(int maxSize, Duration ttl, LongSupplier ticker) {
+        this.maxSize = maxSize;
+        this.ttl = ttl.toNanos();
+        this.ticker = ticker;
+        this.missing = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, Long> eldest) {
+                return size() > NegativeCache.this.maxSize;
+            }
+        };
+    }
+
+    public static NegativeCache fromProperties(Properties props) {
+        return new NegativeCache(
+                Integer.parseInt(props.getProperty("cache.negative.size", "1024")),
+                Duration.ofSeconds(Long.parseLong(props.getProperty("cache.negative.ttl", "60"))));
+    }
+
+    public synchronized boolean contains(UUID id) {
+        Long addedAt = missing.get(id);
+        if (addedAt == null) {
+            return false;
+        }
+        if (ticker.getAsLong() - addedAt >= ttl) {
+            missing.remove(id);
+            return false;
+        }
+        hits.increment();
+        return true;
+    }
+
+    public long version() {
+        return version.get();
+    }
+
+    public synchronized boolean putIfCurrent(UUID id, long expectedVersion) {
+        if (maxSize <= 0 || version.get() != expectedVersion) {
+            return false;
+        }
+        missing.put(id, ticker.getAsLong());
+        return true;
+    }
+
+    public synchronized void invalidate(UUID id) {
+        version.incrementAndGet();
+        missing.remove(id);
+    }
+
+    public synchronized int size() {
+        return missing.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+}
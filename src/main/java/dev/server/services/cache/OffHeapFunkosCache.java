@@ -0,0 +1,362 @@
+package dev.server.services.cache;
+
+import dev.common.models.Funko;
+import dev.server.database.models.Modelo;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+// Guarda los funkos fuera del heap, en un buffer directo con un registro de ancho fijo por funko: el UUID en dos
+// longs, el ordinal del modelo, el precio en céntimos, la fecha en días desde 1970 y la posición del nombre en un
+// segundo buffer. Los registros ocupan las primeras posiciones sin huecos (al borrar uno se mueve el último a su
+// sitio) y un índice aparte de ints, con direccionamiento abierto y sondeo lineal, guarda el número de registro de
+// cada UUID.
+public class OffHeapFunkosCache extends AbstractFunkosCache {
+
+    private static final int EVICTION_SAMPLE = 8;
+    private static final int NAME_BYTES_HINT = 32;
+    private static final long NO_DATE = Long.MIN_VALUE;
+
+    private static final int MSB = 0;
+    private static final int LSB = 8;
+    private static final int MODELO = 16;
+    private static final int REFRESHING = 20;
+    private static final int CENTS = 24;
+    private static final int EPOCH_DAY = 32;
+    private static final int NAME_OFFSET = 40;
+    private static final int NAME_LENGTH = 44;
+    private static final int WRITTEN_AT = 48;
+    private static final int ACCESSED_AT = 56;
+    private static final int VERSION = 64;
+    private static final int RECORD_BYTES = 72;
+
+    // En el índice cada posición guarda el número de registro más uno; 0 es una posición libre
+    private static final int EMPTY = 0;
+
+    private static final Modelo[] MODELOS = Modelo.values();
+
+    private final int capacity;
+    private final int mask;
+    private final ByteBuffer records;
+    private final ByteBuffer index;
+    private final Object lock = new Object();
+    // Los nombres se añaden al final; el hueco de los borrados se recupera al compactar cuando no cabe uno nuevo
+    private ByteBuffer names;
+    private int liveNameBytes;
+    private int count;
+    private int sweepCursor;
+
+
+    public OffHeapFunkosCache(int capacity) {
+        this(capacity, ExpiryPolicy.DEFAULT, null);
+    }
+
+    public OffHeapFunkosCache(int capacity, ExpiryPolicy policy, Function<UUID, Mono<Funko>> loader) {
+        this(capacity, policy, loader, System::nanoTime);
+    }
+
+    OffHeapFunkosCache(int capacity, ExpiryPolicy policy, Function<UUID, Mono<Funko>> loader, LongSupplier ticker) {
+        super(policy, loader, ticker);
+        if (capacity < 1) {
+            throw new IllegalArgumentException("La cache fuera del heap necesita capacidad para al menos un funko");
+        }
+        // Con el índice como mucho a la mitad las secuencias de sondeo se mantienen cortas; cada posición son 4 bytes
+        int slots = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 2;
+        if ((long) capacity * RECORD_BYTES > Integer.MAX_VALUE || (long) slots * Integer.BYTES > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Capacidad demasiado grande para la cache fuera del heap: " + capacity);
+        }
+        this.capacity = capacity;
+        this.mask = slots - 1;
+        this.records = ByteBuffer.allocateDirect(capacity * RECORD_BYTES);
+        this.index = ByteBuffer.allocateDirect(slots * Integer.BYTES);
+        this.names = ByteBuffer.allocateDirect(Math.max(capacity, 16) * NAME_BYTES_HINT);
+    }
+
+    @Override
+    protected CacheEntry read(UUID id) {
+        synchronized (lock) {
+            int slot = find(id);
+            if (slot < 0) {
+                return null;
+            }
+            int base = base(recordAt(slot));
+            CacheEntry entry = new CacheEntry(decode(base, id), records.getLong(base + WRITTEN_AT), records.getLong(base + VERSION));
+            entry.accessedAt = records.getLong(base + ACCESSED_AT);
+            return entry;
+        }
+    }
+
+    @Override
+    protected void write(UUID id, CacheEntry entry) {
+        byte[] name = entry.funko.nombre() == null ? null : entry.funko.nombre().getBytes(StandardCharsets.UTF_8);
+        synchronized (lock) {
+            int slot = find(id);
+            int record;
+            if (slot >= 0) {
+                record = recordAt(slot);
+                // El nombre anterior deja de estar vivo y no se copia si hay que compactar
+                liveNameBytes -= records.getInt(base(record) + NAME_LENGTH);
+                records.putInt(base(record) + NAME_OFFSET, -1);
+            } else {
+                if (count >= capacity) {
+                    evictOne();
+                }
+                record = count++;
+                index.putInt(freeSlot(id) * Integer.BYTES, record + 1);
+            }
+            encode(base(record), id, entry, name == null ? -1 : appendName(name), name == null ? 0 : name.length);
+        }
+    }
+
+    @Override
+    protected void evict(UUID id) {
+        synchronized (lock) {
+            int slot = find(id);
+            if (slot >= 0) {
+                removeAt(slot);
+            }
+        }
+    }
+
+    // Cada lectura decodifica un CacheEntry nuevo, así que se compara la versión y la hora de escritura del registro
+    @Override
+    protected boolean evict(UUID id, CacheEntry expected) {
+        synchronized (lock) {
+            int slot = find(id);
+            if (slot < 0) {
+                return false;
+            }
+            int base = base(recordAt(slot));
+            if (records.getLong(base + VERSION) != expected.version || records.getLong(base + WRITTEN_AT) != expected.writtenAt) {
+                return false;
+            }
+            removeAt(slot);
+            return true;
+        }
+    }
+
+    @Override
+    protected void touch(UUID id, CacheEntry entry, long now) {
+        super.touch(id, entry, now);
+        synchronized (lock) {
+            int slot = find(id);
+            if (slot >= 0 && records.getLong(base(recordAt(slot)) + VERSION) == entry.version) {
+                records.putLong(base(recordAt(slot)) + ACCESSED_AT, now);
+            }
+        }
+    }
+
+    // Cada lectura crea un CacheEntry nuevo, así que la marca de refresco en curso se guarda en el registro
+    @Override
+    protected boolean startRefresh(UUID id, CacheEntry entry) {
+        synchronized (lock) {
+            int slot = find(id);
+            if (slot < 0) {
+                return false;
+            }
+            int base = base(recordAt(slot));
+            if (records.getLong(base + VERSION) != entry.version || records.getInt(base + REFRESHING) != 0) {
+                return false;
+            }
+            records.putInt(base + REFRESHING, 1);
+            return true;
+        }
+    }
+
+    @Override
+    protected void expireEntries(long now) {
+        synchronized (lock) {
+            for (int i = 0; i < SWEEP_BATCH && count > 0; i++) {
+                if (sweepCursor >= count) {
+                    sweepCursor = 0;
+                }
+                if (isExpired(timestamps(base(sweepCursor)), now)) {
+                    // removeAt trae a este registro el último, que se revisa en la siguiente vuelta
+                    removeAt(find(records.getLong(base(sweepCursor) + MSB), records.getLong(base(sweepCursor) + LSB)));
+                    recordExpiration();
+                } else {
+                    sweepCursor++;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        logger.info("Vaciando cache");
+        synchronized (lock) {
+            for (int slot = 0; slot <= mask; slot++) {
+                index.putInt(slot * Integer.BYTES, EMPTY);
+            }
+            names.clear();
+            liveNameBytes = 0;
+            count = 0;
+        }
+    }
+
+    @Override
+    public int size() {
+        synchronized (lock) {
+            return count;
+        }
+    }
+
+    private int find(UUID id) {
+        return find(id.getMostSignificantBits(), id.getLeastSignificantBits());
+    }
+
+    // Posición del índice que apunta al registro con ese UUID, o -1
+    private int find(long msb, long lsb) {
+        for (int slot = home(msb, lsb); isFull(slot); slot = (slot + 1) & mask) {
+            int base = base(recordAt(slot));
+            if (records.getLong(base + MSB) == msb && records.getLong(base + LSB) == lsb) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private int freeSlot(UUID id) {
+        int slot = home(id.getMostSignificantBits(), id.getLeastSignificantBits());
+        while (isFull(slot)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    // Borrado con desplazamiento hacia atrás en el índice: las posiciones siguientes del mismo grupo ocupan el hueco
+    // para que ninguna búsqueda se corte antes de tiempo, sin necesidad de marcas de borrado. Después el último
+    // registro pasa al hueco que deja el borrado.
+    private void removeAt(int slot) {
+        int record = recordAt(slot);
+        liveNameBytes -= records.getInt(base(record) + NAME_LENGTH);
+        int hole = slot;
+        for (int next = (hole + 1) & mask; isFull(next); next = (next + 1) & mask) {
+            int base = base(recordAt(next));
+            int home = home(records.getLong(base + MSB), records.getLong(base + LSB));
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                index.putInt(hole * Integer.BYTES, index.getInt(next * Integer.BYTES));
+                hole = next;
+            }
+        }
+        index.putInt(hole * Integer.BYTES, EMPTY);
+
+        int last = --count;
+        if (record != last) {
+            int moved = find(records.getLong(base(last) + MSB), records.getLong(base(last) + LSB));
+            index.putInt(moved * Integer.BYTES, record + 1);
+            records.put(base(record), records, base(last), RECORD_BYTES);
+        }
+    }
+
+    // Aproximación a LRU: de unos pocos registros al azar sale el que lleva más tiempo sin leerse
+    private void evictOne() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int victim = random.nextInt(count);
+        long oldest = records.getLong(base(victim) + ACCESSED_AT);
+        for (int i = 1; i < Math.min(EVICTION_SAMPLE, count); i++) {
+            int record = random.nextInt(count);
+            long accessedAt = records.getLong(base(record) + ACCESSED_AT);
+            if (accessedAt - oldest < 0) {
+                victim = record;
+                oldest = accessedAt;
+            }
+        }
+        removeAt(find(records.getLong(base(victim) + MSB), records.getLong(base(victim) + LSB)));
+        recordEviction();
+    }
+
+    private void encode(int base, UUID id, CacheEntry entry, int nameOffset, int nameLength) {
+        Funko funko = entry.funko;
+        records.putLong(base + MSB, id.getMostSignificantBits());
+        records.putLong(base + LSB, id.getLeastSignificantBits());
+        records.putInt(base + MODELO, funko.modelo() == null ? -1 : funko.modelo().ordinal());
+        records.putInt(base + REFRESHING, 0);
+        records.putLong(base + CENTS, Math.round(funko.precio() * 100));
+        records.putLong(base + EPOCH_DAY, funko.fechaLanzamiento() == null ? NO_DATE : funko.fechaLanzamiento().toEpochDay());
+        records.putInt(base + NAME_OFFSET, nameOffset);
+        records.putInt(base + NAME_LENGTH, nameLength);
+        liveNameBytes += nameLength;
+        records.putLong(base + WRITTEN_AT, entry.writtenAt);
+        records.putLong(base + ACCESSED_AT, entry.accessedAt);
+        records.putLong(base + VERSION, entry.version);
+    }
+
+    private Funko decode(int base, UUID id) {
+        int modelo = records.getInt(base + MODELO);
+        long epochDay = records.getLong(base + EPOCH_DAY);
+        String nombre = null;
+        int offset = records.getInt(base + NAME_OFFSET);
+        if (offset >= 0) {
+            byte[] bytes = new byte[records.getInt(base + NAME_LENGTH)];
+            names.get(offset, bytes);
+            nombre = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return new Funko(id, nombre, modelo < 0 ? null : MODELOS[modelo], records.getLong(base + CENTS) / 100.0,
+                epochDay == NO_DATE ? null : LocalDate.ofEpochDay(epochDay));
+    }
+
+    // Solo se usan las marcas de tiempo para decidir si caduca, sin decodificar el funko
+    private CacheEntry timestamps(int base) {
+        CacheEntry entry = new CacheEntry(null, records.getLong(base + WRITTEN_AT), records.getLong(base + VERSION));
+        entry.accessedAt = records.getLong(base + ACCESSED_AT);
+        return entry;
+    }
+
+    private int appendName(byte[] name) {
+        if (names.remaining() < name.length) {
+            compactNames(name.length);
+        }
+        int offset = names.position();
+        names.put(name);
+        return offset;
+    }
+
+    // Copia solo los nombres vivos a un buffer nuevo, que crece si siguen sin caber
+    private void compactNames(int needed) {
+        long required = (long) liveNameBytes + needed;
+        if (required > Integer.MAX_VALUE / 2) {
+            throw new IllegalStateException("Nombres de funkos demasiado grandes para la cache fuera del heap");
+        }
+        int size = names.capacity();
+        while (size < required * 2) {
+            size *= 2;
+        }
+        ByteBuffer compacted = ByteBuffer.allocateDirect(size);
+        for (int record = 0; record < count; record++) {
+            int base = base(record);
+            int offset = records.getInt(base + NAME_OFFSET);
+            if (offset >= 0) {
+                int length = records.getInt(base + NAME_LENGTH);
+                records.putInt(base + NAME_OFFSET, compacted.position());
+                compacted.put(compacted.position(), names, offset, length);
+                compacted.position(compacted.position() + length);
+            }
+        }
+        logger.debug("Nombres de la cache compactados: " + names.position() + " -> " + compacted.position() + " bytes");
+        names = compacted;
+    }
+
+    private int recordAt(int slot) {
+        return index.getInt(slot * Integer.BYTES) - 1;
+    }
+
+    private boolean isFull(int slot) {
+        return index.getInt(slot * Integer.BYTES) != EMPTY;
+    }
+
+    private int home(long msb, long lsb) {
+        long hash = (msb ^ lsb) * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 32) & mask;
+    }
+
+    private static int base(int record) {
+        return record * RECORD_BYTES;
+    }
+}
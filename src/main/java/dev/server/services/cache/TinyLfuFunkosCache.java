@@ -0,0 +1,173 @@
+package dev.server.services.cache;
+
+import dev.common.models.Funko;
+import reactor.core.publisher.Mono;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+public class TinyLfuFunkosCache extends AbstractFunkosCache {
+
+    private static final int EVICTION_SAMPLE = 8;
+
+    private final int capacity;
+    private final Map<UUID, Node> cache;
+    private final FrequencySketch sketch;
+    private final Object evictionLock = new Object();
+    // Claves en posiciones contiguas para muestrear víctimas en O(1); solo se toca con evictionLock
+    private final UUID[] keys;
+    private int count;
+    private int sweepCursor;
+
+
+    public TinyLfuFunkosCache(int capacity) {
+        this(capacity, ExpiryPolicy.DEFAULT, null);
+    }
+
+    public TinyLfuFunkosCache(int capacity, ExpiryPolicy policy, Function<UUID, Mono<Funko>> loader) {
+        this(capacity, policy, loader, System::nanoTime);
+    }
+
+    TinyLfuFunkosCache(int capacity, ExpiryPolicy policy, Function<UUID, Mono<Funko>> loader, LongSupplier ticker) {
+        super(policy, loader, ticker);
+        if (capacity < 1) {
+            throw new IllegalArgumentException("La cache TinyLFU necesita capacidad para al menos un funko");
+        }
+        this.capacity = capacity;
+        this.cache = new ConcurrentHashMap<>(capacity);
+        this.sketch = new FrequencySketch(capacity);
+        this.keys = new UUID[capacity];
+    }
+
+    @Override
+    protected CacheEntry read(UUID id) {
+        sketch.increment(id);
+        Node node = cache.get(id);
+        return node == null ? null : node.entry;
+    }
+
+    @Override
+    protected void write(UUID id, CacheEntry entry) {
+        sketch.increment(id);
+        synchronized (evictionLock) {
+            Node existing = cache.get(id);
+            if (existing != null) {
+                cache.put(id, new Node(entry, existing.slot));
+                return;
+            }
+            if (count >= capacity && !evictFor(id)) {
+                logger.debug("Funko con id " + id + " no admitido en la cache");
+                return;
+            }
+            keys[count] = id;
+            cache.put(id, new Node(entry, count++));
+        }
+    }
+
+    @Override
+    protected void evict(UUID id) {
+        synchronized (evictionLock) {
+            Node node = cache.remove(id);
+            if (node != null) {
+                removeSlot(node.slot);
+            }
+        }
+    }
+
+    @Override
+    protected boolean evict(UUID id, CacheEntry expected) {
+        synchronized (evictionLock) {
+            Node node = cache.get(id);
+            if (node == null || node.entry != expected) {
+                return false;
+            }
+            cache.remove(id);
+            removeSlot(node.slot);
+            return true;
+        }
+    }
+
+    @Override
+    protected void expireEntries(long now) {
+        synchronized (evictionLock) {
+            for (int i = 0; i < SWEEP_BATCH && count > 0; i++) {
+                if (sweepCursor >= count) {
+                    sweepCursor = 0;
+                }
+                UUID key = keys[sweepCursor];
+                if (isExpired(cache.get(key).entry, now)) {
+                    cache.remove(key);
+                    recordExpiration();
+                    // removeSlot trae la última clave a esta posición, que se revisa en la siguiente vuelta
+                    removeSlot(sweepCursor);
+                } else {
+                    sweepCursor++;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        logger.info("Vaciando cache");
+        synchronized (evictionLock) {
+            cache.clear();
+            Arrays.fill(keys, null);
+            count = 0;
+        }
+    }
+
+    @Override
+    public int size() {
+        return cache.size();
+    }
+
+    // TinyLFU: el candidato solo entra si se ha pedido más que la víctima, la menos frecuente de una muestra.
+    private boolean evictFor(UUID candidate) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int victimSlot = -1;
+        int victimFrequency = Integer.MAX_VALUE;
+
+        for (int i = 0; i < EVICTION_SAMPLE; i++) {
+            int slot = random.nextInt(count);
+            int frequency = sketch.frequency(keys[slot]);
+            if (frequency < victimFrequency) {
+                victimSlot = slot;
+                victimFrequency = frequency;
+            }
+        }
+
+        if (victimSlot < 0 || sketch.frequency(candidate) <= victimFrequency) {
+            return false;
+        }
+        cache.remove(keys[victimSlot]);
+        removeSlot(victimSlot);
+        recordEviction();
+        return true;
+    }
+
+    private void removeSlot(int slot) {
+        int last = --count;
+        UUID moved = keys[last];
+        keys[slot] = moved;
+        keys[last] = null;
+        if (slot != last) {
+            cache.get(moved).slot = slot;
+        }
+    }
+
+    private static final class Node {
+        private final CacheEntry entry;
+        private int slot;
+
+        private Node(CacheEntry entry, int slot) {
+            this.entry = entry;
+            this.slot = slot;
+        }
+    }
+}
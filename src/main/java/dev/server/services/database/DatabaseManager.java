@@ -6,13 +6,14 @@ import io.r2dbc.pool.ConnectionPoolConfiguration;
 import io.r2dbc.spi.Connection;
 import io.r2dbc.spi.ConnectionFactories;
 import io.r2dbc.spi.ConnectionFactory;
-import io.r2dbc.spi.Statement;
+import io.r2dbc.spi.Result;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import reactor.core.publisher.Mono;
 import reactor.core.publisher.Flux;
 
 import java.io.*;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Properties;
 import java.util.stream.Collectors;
@@ -25,8 +26,10 @@ public class DatabaseManager {
     private final Logger logger = LoggerFactory.getLogger(DatabaseManager.class);
     String url = "";
     boolean initTables = false;
+    boolean resetTables = false;
 
-    private final List<String> initScripts = List.of("remove.sql", "init.sql");
+    private static final String REMOVE_SCRIPT = "remove.sql";
+    private final List<String> migrations = List.of("migrations/V1__funkos.sql", "migrations/V2__funkos_claves_e_indices.sql");
     private final ConnectionFactory connectionFactory;
     private final ConnectionPool connectionPool;
 
@@ -45,8 +48,10 @@ public class DatabaseManager {
         connectionPool = new ConnectionPool(configuration);
 
 
-        if (initTables){
+        if (resetTables) {
             initTables();
+        } else if (initTables) {
+            migrate();
         }
 
 
@@ -66,36 +71,99 @@ public class DatabaseManager {
             appProps.load(getClass().getClassLoader().getResourceAsStream("database.properties"));
             url = appProps.getProperty("db.stringDB");
             initTables = Boolean.parseBoolean(appProps.getProperty("db.loadTables", "false"));
+            resetTables = Boolean.parseBoolean(appProps.getProperty("db.reset", "false"));
         } catch (Exception e) {
             logger.error("Error al cargar el fichero de propiedades ",e);
         }
 
     }
 
-    public void initTables(){
-
-        Flux.fromIterable(initScripts).concatMap(sc -> Mono.usingWhen(connectionFactory.create(),
-                connection -> {
-                    logger.debug("Creando conexión con la base de datos");
-                    String scriptContent = null;
-                    try (InputStream inputStream = getClass().getClassLoader().getResourceAsStream(sc)) {
-                        if (inputStream == null) {
-                            return Mono.error(new IOException("No se ha encontrado el fichero de script de inicialización de la base de datos"));
-                        } else {
-                            try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream))) {
-                                scriptContent = reader.lines().collect(Collectors.joining("\n"));
+    // Borra las tablas y vuelve a aplicar todas las migraciones
+    public void initTables() {
+        runScript(REMOVE_SCRIPT).then(applyMigrations()).block();
+        logger.info("Base de datos reiniciada");
+    }
+
+    public void migrate() {
+        applyMigrations().block();
+    }
+
+    // Cada migración se aplica una sola vez y en orden; su versión sale del nombre del fichero (V<n>__descripcion.sql)
+    // y se apunta en schema_version al terminar. H2 confirma cada sentencia DDL en cuanto se ejecuta, así que la
+    // transacción solo deshace los datos: si una migración falla a medias se vuelve a ejecutar entera en el siguiente
+    // arranque, y por eso sus sentencias tienen que poder repetirse (IF NOT EXISTS y restricciones con nombre).
+    private Mono<Void> applyMigrations() {
+        return Mono.usingWhen(connectionFactory.create(),
+                connection -> execute(connection, "CREATE TABLE IF NOT EXISTS schema_version (version INT PRIMARY KEY, script VARCHAR(255) NOT NULL, applied_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP)")
+                        .then(Flux.from(connection.createStatement("SELECT COALESCE(MAX(version), 0) AS version FROM schema_version").execute())
+                                .flatMap(res -> res.map((row, rm) -> row.get("version", Integer.class)))
+                                .next())
+                        .flatMapMany(current -> {
+                            logger.info("Version del esquema de la base de datos: " + current);
+                            return Flux.fromIterable(migrations).filter(script -> version(script) > current);
+                        })
+                        .concatMap(script -> applyMigration(connection, script))
+                        .then(),
+                Connection::close);
+    }
+
+    private Mono<Void> applyMigration(Connection connection, String script) {
+        return Mono.from(connection.beginTransaction())
+                .thenMany(statements(script))
+                .concatMap(sql -> Flux.from(connection.createStatement(sql).execute())
+                        .flatMap(Result::getRowsUpdated)
+                        .reduce(0L, Long::sum)
+                        .doOnNext(rows -> {
+                            if (rows > 0 && sql.regionMatches(true, 0, "DELETE", 0, 6)) {
+                                logger.warn("La migracion " + script + " ha borrado " + rows + " filas: " + sql);
                             }
-                        }
-                    } catch (IOException e) {
-                        throw new RuntimeException(e);
-                    }
-                    Statement statement = connection.createStatement(scriptContent);
-                    return Mono.from(statement.execute());
-                },
-                Connection::close).then()).doOnNext(res -> logger.info("Script ejecutado correctamente")
+                        }))
+                .then(Flux.from(connection.createStatement("INSERT INTO schema_version (version, script) VALUES (?, ?)")
+                        .bind(0, version(script)).bind(1, script).execute()).flatMap(Result::getRowsUpdated).then())
+                .then(Mono.from(connection.commitTransaction()))
+                .doOnSuccess(v -> logger.info("Migracion aplicada: " + script))
+                .onErrorResume(e -> Mono.from(connection.rollbackTransaction()).then(Mono.error(e)));
+    }
 
-        ).doOnComplete(()-> logger.info("Se han ejecutado todos los scripts")).subscribe();
+    private Mono<Void> runScript(String script) {
+        return Mono.usingWhen(connectionFactory.create(),
+                connection -> statements(script)
+                        .concatMap(sql -> execute(connection, sql))
+                        .then(),
+                Connection::close);
+    }
 
+    private Mono<Void> execute(Connection connection, String sql) {
+        return Flux.from(connection.createStatement(sql).execute()).flatMap(Result::getRowsUpdated).then();
+    }
+
+    private Flux<String> statements(String script) {
+        return Flux.defer(() -> {
+            try {
+                return Flux.fromIterable(readStatements(script));
+            } catch (IOException e) {
+                return Flux.error(e);
+            }
+        });
+    }
+
+    private List<String> readStatements(String script) throws IOException {
+        try (InputStream inputStream = getClass().getClassLoader().getResourceAsStream(script)) {
+            if (inputStream == null) {
+                throw new IOException("No se ha encontrado el script de la base de datos " + script);
+            }
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream))) {
+                return Arrays.stream(reader.lines().collect(Collectors.joining("\n")).split(";"))
+                        .map(String::trim)
+                        .filter(sql -> !sql.isEmpty())
+                        .toList();
+            }
+        }
+    }
+
+    private static int version(String script) {
+        String name = script.substring(script.lastIndexOf('/') + 1);
+        return Integer.parseInt(name.substring(1, name.indexOf("__")));
     }
 
 
@@ -103,6 +171,11 @@ public class DatabaseManager {
         return connectionPool;
     }
 
+    public void close() {
+        logger.info("Cerrando pool de conexiones");
+        connectionPool.dispose();
+    }
+
 
 
 
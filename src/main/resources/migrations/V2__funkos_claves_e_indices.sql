@@ -0,0 +1,6 @@
+DELETE FROM funkos WHERE id NOT IN (SELECT MIN(id) FROM funkos GROUP BY cod);
+ALTER TABLE funkos ADD CONSTRAINT IF NOT EXISTS funkos_pk PRIMARY KEY (id);
+CREATE UNIQUE INDEX IF NOT EXISTS funkos_cod_idx ON funkos (cod);
+CREATE INDEX IF NOT EXISTS funkos_modelo_idx ON funkos (modelo);
+CREATE INDEX IF NOT EXISTS funkos_fecha_lanzamiento_idx ON funkos (fecha_lanzamiento);
+CREATE INDEX IF NOT EXISTS funkos_nombre_idx ON funkos (nombre);
@@ -1 +1,2 @@
-DROP TABLE IF EXISTS `funkos`;
\ No newline at end of file
+DROP TABLE IF EXISTS `funkos`;
+DROP TABLE IF EXISTS `schema_version`;
\ No newline at end of file
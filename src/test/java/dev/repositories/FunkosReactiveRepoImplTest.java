@@ -2,15 +2,21 @@ package dev.repositories;
 
 
 import dev.common.models.Funko;
+import dev.common.models.Page;
 import dev.server.database.models.Modelo;
+import dev.server.exceptions.PaginaNoValida;
 import dev.server.repositories.FunkosReactiveRepoImpl;
+import dev.server.repositories.WriteResult;
 import dev.server.services.database.DatabaseManager;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
 
 import java.io.IOException;
 import java.sql.SQLException;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -44,6 +50,37 @@ class FunkosReactiveRepoImplTest {
         assertEquals(funko.codigo(), dbFunko.codigo());
     }
 
+    @Test
+    void findAllById() {
+        Funko funko = new Funko(UUID.randomUUID(), "Funko", Modelo.OTROS, 10, LocalDate.now());
+        Funko funko2 = new Funko(UUID.randomUUID(), "Funko 2", Modelo.OTROS, 10, LocalDate.now());
+        Funko funko3 = new Funko(UUID.randomUUID(), "Funko 3", Modelo.OTROS, 10, LocalDate.now());
+        funkosReactiveRepo.save(funko).block();
+        funkosReactiveRepo.save(funko2).block();
+        funkosReactiveRepo.save(funko3).block();
+        List<UUID> found = funkosReactiveRepo.findAllById(List.of(funko.codigo(), funko3.codigo(), UUID.randomUUID()))
+                .map(Funko::codigo).collectList().block();
+        assertAll(() -> {
+            assertEquals(2, found.size());
+            assertTrue(found.containsAll(List.of(funko.codigo(), funko3.codigo())));
+        });
+    }
+
+    @Test
+    void findByModelo() {
+        funkosReactiveRepo.save(new Funko(UUID.randomUUID(), "Funko", Modelo.MARVEL, 10, LocalDate.now())).block();
+        funkosReactiveRepo.save(new Funko(UUID.randomUUID(), "Funko 2", Modelo.OTROS, 10, LocalDate.now())).block();
+        assertEquals(List.of("Funko"), funkosReactiveRepo.findByModelo(Modelo.MARVEL).map(Funko::nombre).collectList().block());
+    }
+
+    @Test
+    void findByReleaseYear() {
+        funkosReactiveRepo.save(new Funko(UUID.randomUUID(), "Funko", Modelo.OTROS, 10, LocalDate.of(2021, 12, 31))).block();
+        funkosReactiveRepo.save(new Funko(UUID.randomUUID(), "Funko 2", Modelo.OTROS, 10, LocalDate.of(2022, 1, 1))).block();
+        funkosReactiveRepo.save(new Funko(UUID.randomUUID(), "Funko 3", Modelo.OTROS, 10, LocalDate.of(2023, 1, 1))).block();
+        assertEquals(List.of("Funko 2"), funkosReactiveRepo.findByReleaseYear(2022).map(Funko::nombre).collectList().block());
+    }
+
     @Test
     void findByIdNoExists() {
         assertNull(funkosReactiveRepo.findById(UUID.randomUUID()).block());
@@ -56,6 +93,99 @@ class FunkosReactiveRepoImplTest {
         assertEquals(funko.codigo(), funkosReactiveRepo.findById(funko.codigo()).block().codigo());
     }
 
+    @Test
+    void saveRejectsDuplicatedCod() {
+        Funko funko = new Funko(UUID.randomUUID(), "Funko", Modelo.OTROS, 10, LocalDate.now());
+        funkosReactiveRepo.save(funko).block();
+        assertAll(() -> {
+            assertThrows(RuntimeException.class, () -> funkosReactiveRepo.save(funko).block());
+            assertEquals(1, funkosReactiveRepo.count().block());
+        });
+    }
+
+    @Test
+    void saveBatchIsAllOrNothing() {
+        Funko existing = new Funko(UUID.randomUUID(), "Funko", Modelo.OTROS, 10, LocalDate.now());
+        List<Funko> batch = List.of(
+                new Funko(UUID.randomUUID(), "Funko 1", Modelo.MARVEL, 10, LocalDate.now()),
+                new Funko(UUID.randomUUID(), "Funko 2", Modelo.DISNEY, 20, LocalDate.now()));
+        assertAll(() -> {
+            assertEquals(2, funkosReactiveRepo.saveBatch(batch).block());
+            assertThrows(RuntimeException.class, () -> funkosReactiveRepo.saveBatch(List.of(
+                    existing, new Funko(UUID.randomUUID(), "Funko 3", Modelo.OTROS, 30, LocalDate.now()), batch.get(0))).block());
+            assertEquals(2, funkosReactiveRepo.count().block());
+            assertTrue(funkosReactiveRepo.findById(existing.codigo()).blockOptional().isEmpty());
+        });
+    }
+
+    @Test
+    void saveAllReportsEachFunko() {
+        Funko first = new Funko(UUID.randomUUID(), "Funko 1", Modelo.MARVEL, 10, LocalDate.now());
+        Funko second = new Funko(UUID.randomUUID(), "Funko 2", Modelo.DISNEY, 20, LocalDate.now());
+        Funko repeated = new Funko(first.codigo(), "Funko 3", Modelo.OTROS, 30, LocalDate.now());
+
+        List<WriteResult<Funko>> results = funkosReactiveRepo.saveAll(Flux.just(first, second, repeated)).collectList().block();
+
+        assertAll(() -> {
+            assertEquals(List.of(true, true, false), results.stream().map(WriteResult::isWritten).toList());
+            assertEquals(repeated, results.get(2).entity());
+            assertEquals(2, funkosReactiveRepo.count().block());
+        });
+    }
+
+    @Test
+    void saveAllRejectsIncompleteFunkosOneByOne() {
+        Funko valid = new Funko(UUID.randomUUID(), "Funko 1", Modelo.MARVEL, 10, LocalDate.now());
+        Funko withoutModelo = new Funko(UUID.randomUUID(), "Funko 2", null, 20, LocalDate.now());
+        Funko withoutNombre = new Funko(UUID.randomUUID(), null, Modelo.DISNEY, 30, LocalDate.now());
+        Funko withoutFecha = new Funko(UUID.randomUUID(), "Funko 4", Modelo.ANIME, 40, null);
+
+        List<WriteResult<Funko>> results = funkosReactiveRepo.saveAll(Flux.just(valid, withoutModelo, withoutNombre, withoutFecha))
+                .collectList().block();
+
+        assertAll(() -> {
+            assertEquals(List.of(true, false, true, false), results.stream().map(WriteResult::isWritten).toList());
+            assertEquals("Modelo vacio o desconocido", results.get(1).error());
+            assertEquals(withoutNombre, funkosReactiveRepo.findById(withoutNombre.codigo()).block());
+            assertEquals(2, funkosReactiveRepo.count().block());
+        });
+    }
+
+    @Test
+    void updateAllReportsMissingFunkos() {
+        Funko existing = new Funko(UUID.randomUUID(), "Funko", Modelo.OTROS, 10, LocalDate.now());
+        funkosReactiveRepo.save(existing).block();
+        Funko updated = new Funko(existing.codigo(), "Funko 2", Modelo.ANIME, 15, LocalDate.now());
+        Funko missing = new Funko(UUID.randomUUID(), "Funko 3", Modelo.OTROS, 30, LocalDate.now());
+
+        List<WriteResult<Funko>> results = funkosReactiveRepo.updateAll(Flux.just(missing, updated)).collectList().block();
+
+        assertAll(() -> {
+            assertEquals(List.of(false, true), results.stream().map(WriteResult::isWritten).toList());
+            assertEquals(updated, funkosReactiveRepo.findById(existing.codigo()).block());
+        });
+    }
+
+    @Test
+    void findPageFollowsTokensToTheEnd() {
+        List<Funko> saved = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            saved.add(funkosReactiveRepo.save(new Funko(UUID.randomUUID(), "Funko " + i, Modelo.OTROS, 10 + i, LocalDate.now())).block());
+        }
+
+        Page<Funko> first = funkosReactiveRepo.findPage(null, 2).block();
+        Page<Funko> second = funkosReactiveRepo.findPage(first.next(), 2).block();
+        Page<Funko> last = funkosReactiveRepo.findPage(second.next(), 2).block();
+
+        assertAll(() -> {
+            assertEquals(saved.subList(0, 2), first.items());
+            assertEquals(saved.subList(2, 4), second.items());
+            assertEquals(saved.subList(4, 5), last.items());
+            assertNull(last.next());
+            assertThrows(PaginaNoValida.class, () -> funkosReactiveRepo.findPage("no-es-un-token", 2).block());
+        });
+    }
+
     @Test
     void update() throws SQLException, IOException {
         Funko funko = new Funko(UUID.randomUUID(), "Funko", Modelo.OTROS, 10, LocalDate.now());
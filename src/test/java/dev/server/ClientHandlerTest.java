@@ -0,0 +1,229 @@
+package dev.server;
+
+import dev.common.models.Funko;
+import dev.common.models.User;
+import dev.server.database.models.Modelo;
+import dev.server.services.FunkoService;
+import dev.server.services.TokenService;
+import dev.server.services.cache.CacheStats;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ClientHandlerTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private int maxInFlight;
+    private int streamWindow;
+    private String secret;
+
+    @BeforeEach
+    void setUp() {
+        maxInFlight = Server.MAX_IN_FLIGHT;
+        streamWindow = Server.STREAM_WINDOW;
+        secret = Server.SECRET;
+        Server.MAX_IN_FLIGHT = 2;
+        Server.STREAM_WINDOW = 1;
+        Server.SECRET = "secreto";
+    }
+
+    @AfterEach
+    void tearDown() {
+        Server.MAX_IN_FLIGHT = maxInFlight;
+        Server.STREAM_WINDOW = streamWindow;
+        Server.SECRET = secret;
+        executor.shutdownNow();
+    }
+
+    @Test
+    void demandIsReadWhileEveryPermitHoldsAStream() throws Exception {
+        FunkoService funkoService = mock(FunkoService.class);
+        List<Funko> funkos = List.of(
+                new Funko(UUID.randomUUID(), "Funko 1", Modelo.MARVEL, 10, LocalDate.of(2022, 1, 1)),
+                new Funko(UUID.randomUUID(), "Funko 2", Modelo.DISNEY, 20, LocalDate.of(2022, 1, 1)),
+                new Funko(UUID.randomUUID(), "Funko 3", Modelo.ANIME, 30, LocalDate.of(2022, 1, 1)));
+        when(funkoService.findAll()).thenAnswer(invocation -> Flux.fromIterable(funkos));
+
+        PipedOutputStream toServer = new PipedOutputStream();
+        BufferedReader in = connect(funkoService, toServer);
+
+        String token = token();
+        PrintWriter out = new PrintWriter(toServer, true, StandardCharsets.UTF_8);
+
+        // Tantos envíos como peticiones en curso, cada uno parado tras su primera ventana de un funko
+        for (long id = 1; id <= Server.MAX_IN_FLIGHT; id++) {
+            out.println(request("STREAMALL", "null", token, id));
+        }
+        for (long id = 1; id <= Server.MAX_IN_FLIGHT; id++) {
+            out.println(request("DEMAND", "10", token, id));
+        }
+
+        Set<String> ended = new HashSet<>();
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            while (ended.size() < Server.MAX_IN_FLIGHT) {
+                String line = in.readLine();
+                assertNotNull(line);
+                if (line.contains("\"status\":\"END\"")) {
+                    assertTrue(line.contains("\"content\":3"), line);
+                    ended.add(line.replaceAll(".*\"id\":(\\d+).*", "$1"));
+                }
+            }
+        });
+        assertEquals(Set.of("1", "2"), ended);
+
+        toServer.close();
+    }
+
+    @Test
+    void bulkWritesWithoutFunkosAreRejected() throws Exception {
+        FunkoService funkoService = mock(FunkoService.class);
+        PipedOutputStream toServer = new PipedOutputStream();
+        BufferedReader in = connect(funkoService, toServer);
+        PrintWriter out = new PrintWriter(toServer, true, StandardCharsets.UTF_8);
+        String token = token();
+
+        out.println(request("POSTALL", "null", token, 1));
+        out.println(request("UPDATEALL", "[]", token, 2));
+
+        out.println(request("POSTALL", "[null]", token, 3));
+
+        Set<String> errors = new HashSet<>();
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            for (int i = 0; i < 3; i++) {
+                String line = in.readLine();
+                assertNotNull(line);
+                assertTrue(line.contains("\"status\":\"ERROR\""), line);
+                errors.add(line.replaceAll(".*\"id\":(\\d+).*", "$1") + " " + line.replaceAll(".*\"content\":\"([^\"]*)\".*", "$1"));
+            }
+        });
+        assertEquals(Set.of("1 La peticion no contiene funkos", "2 La peticion no contiene funkos", "3 La peticion contiene funkos vacios"), errors);
+        verifyNoInteractions(funkoService);
+
+        toServer.close();
+    }
+
+    @Test
+    void getByIdsWithoutCodesIsRejected() throws Exception {
+        FunkoService funkoService = mock(FunkoService.class);
+        PipedOutputStream toServer = new PipedOutputStream();
+        BufferedReader in = connect(funkoService, toServer);
+        PrintWriter out = new PrintWriter(toServer, true, StandardCharsets.UTF_8);
+        String token = token();
+
+        out.println(request("GETBYIDS", "null", token, 1));
+        out.println(request("GETBYIDS", "[]", token, 2));
+
+        Set<String> errors = new HashSet<>();
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            for (int i = 0; i < 2; i++) {
+                String line = in.readLine();
+                assertNotNull(line);
+                assertTrue(line.contains("\"status\":\"ERROR\""), line);
+                errors.add(line.replaceAll(".*\"id\":(\\d+).*", "$1") + " " + line.replaceAll(".*\"content\":\"([^\"]*)\".*", "$1"));
+            }
+        });
+        assertEquals(Set.of("1 La peticion no contiene codigos", "2 La peticion no contiene codigos"), errors);
+        verifyNoInteractions(funkoService);
+
+        toServer.close();
+    }
+
+    @Test
+    void malformedLinesAreAnsweredWithoutClosingTheConnection() throws Exception {
+        FunkoService funkoService = mock(FunkoService.class);
+        PipedOutputStream toServer = new PipedOutputStream();
+        BufferedReader in = connect(funkoService, toServer);
+        PrintWriter out = new PrintWriter(toServer, true, StandardCharsets.UTF_8);
+        String token = token();
+
+        out.println("{no es json");
+        out.println(request("GETBYIDS", "[null]", token, 2));
+        out.println(request("GETBYIDS", "[]", token, 3));
+
+        Set<String> errors = new HashSet<>();
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            for (int i = 0; i < 3; i++) {
+                String line = in.readLine();
+                assertNotNull(line);
+                assertTrue(line.contains("\"status\":\"ERROR\""), line);
+                String id = line.contains("\"id\":") ? line.replaceAll(".*\"id\":(\\d+).*", "$1") : "-";
+                errors.add(id + " " + line.replaceAll(".*\"content\":\"([^\"]*)\".*", "$1"));
+            }
+        });
+        assertEquals(Set.of("- Petición mal formada", "2 Petición mal formada", "3 La peticion no contiene codigos"), errors);
+        verifyNoInteractions(funkoService);
+
+        toServer.close();
+    }
+
+    @Test
+    void statsComeFromTheFunkoService() throws Exception {
+        FunkoService funkoService = mock(FunkoService.class);
+        when(funkoService.cacheStats()).thenReturn(new CacheStats(7, 3, 3, 0, 100, 0, 0, 3));
+        PipedOutputStream toServer = new PipedOutputStream();
+        BufferedReader in = connect(funkoService, toServer);
+        PrintWriter out = new PrintWriter(toServer, true, StandardCharsets.UTF_8);
+        String token = TokenService.getInstance().createToken(new User(1, "juan", "juan1234", User.Role.ADMIN), Server.SECRET, 60_000);
+
+        out.println(request("STATS", "null", token, 1));
+
+        String line = assertTimeoutPreemptively(Duration.ofSeconds(10), in::readLine);
+        assertAll(
+                () -> assertTrue(line.contains("\"status\":\"OK\""), line),
+                () -> assertTrue(line.contains("\"hits\":7"), line)
+        );
+
+        toServer.close();
+    }
+
+    private BufferedReader connect(FunkoService funkoService, PipedOutputStream toServer) throws IOException {
+        PipedInputStream serverIn = new PipedInputStream(toServer);
+        PipedInputStream fromServer = new PipedInputStream();
+        PipedOutputStream serverOut = new PipedOutputStream(fromServer);
+        Socket socket = new Socket() {
+            @Override
+            public InputStream getInputStream() {
+                return serverIn;
+            }
+
+            @Override
+            public OutputStream getOutputStream() {
+                return serverOut;
+            }
+        };
+        executor.execute(new ClientHandler(socket, 1, funkoService, executor));
+        return new BufferedReader(new InputStreamReader(fromServer, StandardCharsets.UTF_8));
+    }
+
+    private static String token() {
+        return TokenService.getInstance().createToken(new User(1, "pepe", "pepe1234", User.Role.USER), Server.SECRET, 60_000);
+    }
+
+    private static String request(String type, String content, String token, long id) {
+        return "{\"type\":\"" + type + "\",\"content\":" + content + ",\"token\":\"" + token + "\",\"createdAt\":null"
+                + ",\"id\":" + id + "}";
+    }
+}
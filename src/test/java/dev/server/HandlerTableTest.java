@@ -0,0 +1,67 @@
+package dev.server;
+
+import com.google.gson.Gson;
+import dev.common.models.Request;
+import dev.common.models.Response;
+import dev.server.annotations.Authorized;
+import dev.server.annotations.RequestBody;
+import dev.server.annotations.RequestHandler;
+import org.junit.jupiter.api.Test;
+
+import java.lang.invoke.MethodHandles;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HandlerTableTest {
+
+    static class Handlers {
+        @RequestHandler(Request.Type.GETBYYEAR)
+        @Authorized
+        private Response<Integer> year(@RequestBody Integer year) {
+            return new Response<>(Response.Status.OK, year + 1, null);
+        }
+
+        @RequestHandler(Request.Type.GETALL)
+        public Response<String> all() {
+            return new Response<>(Response.Status.OK, "todos", null);
+        }
+    }
+
+    static class InvalidHandlers {
+        @RequestHandler(Request.Type.GETALL)
+        public String all() {
+            return "todos";
+        }
+    }
+
+    private final HandlerTable table = HandlerTable.build(Handlers.class, MethodHandles.lookup(), new Gson());
+
+    @Test
+    void build() {
+        assertAll(
+                () -> assertEquals(2, table.size()),
+                () -> assertTrue(table.get(Request.Type.GETBYYEAR).authorized()),
+                () -> assertFalse(table.get(Request.Type.GETALL).needsToken()),
+                () -> assertNull(table.get(Request.Type.POST))
+        );
+    }
+
+    @Test
+    void invokeWithBody() throws Throwable {
+        Request<Integer> request = new Request<>(Request.Type.GETBYYEAR, 2022, null, null);
+        Response<?> response = (Response<?>) table.get(Request.Type.GETBYYEAR).invoke(new Handlers(), request, null);
+        assertEquals(2023, response.content());
+    }
+
+    @Test
+    void invokeWithoutArguments() throws Throwable {
+        Request<Object> request = new Request<>(Request.Type.GETALL, null, null, null);
+        Response<?> response = (Response<?>) table.get(Request.Type.GETALL).invoke(new Handlers(), request, null);
+        assertEquals("todos", response.content());
+    }
+
+    @Test
+    void invalidReturnType() {
+        assertThrows(IllegalArgumentException.class, () -> HandlerTable.build(InvalidHandlers.class, MethodHandles.lookup(), new Gson()));
+    }
+}
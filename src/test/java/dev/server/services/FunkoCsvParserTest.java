@@ -0,0 +1,65 @@
+package dev.server.services;
+
+import dev.common.models.Funko;
+import dev.server.database.models.Modelo;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FunkoCsvParserTest {
+
+    @TempDir
+    Path dir;
+
+    private static Funko splitParse(String line) {
+        String[] values = line.split(",");
+        return new Funko(UUID.fromString(values[0].substring(0, 35)), values[1], Modelo.valueOf(values[2]),
+                Double.parseDouble(values[3]), LocalDate.parse(values[4]));
+    }
+
+    @Test
+    void matchesSplitParsingInSmallChunks() throws IOException {
+        Path file = Path.of("data", "funkos.csv");
+        List<Funko> expected;
+        try (var lines = Files.lines(file)) {
+            expected = lines.skip(1).map(FunkoCsvParserTest::splitParse).toList();
+        }
+
+        List<Funko> parsed = new FunkoCsvParser(4, 100).parse(file, (error, offset) -> fail(error)).collectList().block();
+
+        assertEquals(expected, parsed);
+    }
+
+    @Test
+    void rejectsMalformedLinesAndKeepsGoing() throws IOException {
+        Path file = dir.resolve("funkos.csv");
+        Files.writeString(file, String.join("\r\n",
+                "COD,NOMBRE,MODELO,PRECIO,FECHA_LANZAMIENTO",
+                "3b6c6f58-79b9-434b-82ab-01a2d6e4434a,Spiderman Delight,MARVEL,15.99,2022-05-01",
+                "no-es-un-uuid,Stitch,DISNEY,25.99,2023-01-01",
+                "f8f7ae42-5b01-4d3b-82ab-2d1a2d6e4434a,Stitch Hula,DISNEY",
+                "f8f7ae42-5b01-4d3b-82ab-2d1a2d6e4434a,Stitch Hula,PIXAR,25.99,2023-01-01",
+                "",
+                "a1b2c3d4-5b01-4d3b-82ab-2d1a2d6e4434,Pokémon,ANIME,1e1,2021-12-31,extra"));
+        Queue<Long> rejected = new ConcurrentLinkedQueue<>();
+
+        List<Funko> parsed = new FunkoCsvParser(2, 16).parse(file, (error, offset) -> rejected.add(offset)).collectList().block();
+
+        assertAll(
+                () -> assertEquals(List.of(
+                        splitParse("3b6c6f58-79b9-434b-82ab-01a2d6e4434a,Spiderman Delight,MARVEL,15.99,2022-05-01"),
+                        splitParse("a1b2c3d4-5b01-4d3b-82ab-2d1a2d6e4434,Pokémon,ANIME,1e1,2021-12-31,extra")), parsed),
+                () -> assertEquals(4, rejected.size())
+        );
+    }
+}
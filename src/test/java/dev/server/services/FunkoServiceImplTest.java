@@ -1,11 +1,14 @@
 package dev.server.services;
 
 import dev.common.models.Funko;
+import dev.common.models.Page;
 import dev.server.database.models.Modelo;
 import dev.server.exceptions.FunkoNoEncontrado;
 import dev.server.exceptions.FunkoNoGuardado;
 import dev.server.repositories.FunkosReactiveRepo;
+import dev.server.repositories.WriteResult;
 import dev.server.services.FunkoServiceImpl;
+import dev.server.services.ImportReport;
 import dev.server.services.cache.FunkosCacheImpl;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -15,6 +18,7 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
 
 import java.io.BufferedReader;
 import java.io.FileNotFoundException;
@@ -26,10 +30,16 @@ import java.sql.SQLException;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -91,6 +101,54 @@ public class FunkoServiceImplTest {
 
     }
 
+    @Test
+    public void findByIdCoalescesConcurrentMisses() throws SQLException, IOException {
+
+        Sinks.One<Funko> query = Sinks.one();
+        when(funkosReactiveRepo.findById(any(UUID.class))).thenReturn(query.asMono());
+        when(funkosCache.get(any(UUID.class))).thenReturn(Mono.empty());
+
+        UUID id = funkos.get(0).codigo();
+        CompletableFuture<Funko> first = funkoService.findById(id).toFuture();
+        CompletableFuture<Funko> second = funkoService.findById(id).toFuture();
+        query.tryEmitValue(funkos.get(0));
+
+        assertAll(
+                () -> assertEquals(funkos.get(0), first.join()),
+                () -> assertEquals(funkos.get(0), second.join()),
+                () -> assertEquals(1, funkoService.getIssuedLoads()),
+                () -> assertEquals(1, funkoService.getCoalescedLoads())
+        );
+
+        verify(funkosCache, times(1)).putIfCurrent(eq(id), eq(funkos.get(0)), anyLong());
+
+    }
+
+    @Test
+    public void findByIdAfterSaveDoesNotJoinOlderLoad() throws SQLException, IOException {
+
+        Sinks.One<Funko> staleQuery = Sinks.one();
+        Funko funko = funkos.get(0);
+        AtomicInteger queries = new AtomicInteger();
+        when(funkosReactiveRepo.findById(funko.codigo()))
+                .thenAnswer(invocation -> queries.getAndIncrement() == 0 ? staleQuery.asMono() : Mono.just(funko));
+        when(funkosCache.get(any(UUID.class))).thenReturn(Mono.empty());
+        when(funkosReactiveRepo.save(funko)).thenReturn(Mono.just(funko));
+
+        CompletableFuture<Funko> stale = funkoService.findById(funko.codigo()).toFuture();
+        funkoService.save(funko).block();
+        CompletableFuture<Funko> fresh = funkoService.findById(funko.codigo()).toFuture();
+        staleQuery.tryEmitEmpty();
+
+        assertAll(
+                () -> assertEquals(funko, fresh.join()),
+                () -> assertThrows(Exception.class, stale::join),
+                () -> assertEquals(2, funkoService.getIssuedLoads()),
+                () -> assertEquals(0, funkoService.getCoalescedLoads())
+        );
+
+    }
+
     @Test
     public void findByIdNotFound() throws SQLException, IOException {
 
@@ -105,6 +163,51 @@ public class FunkoServiceImplTest {
 
     }
 
+    @Test
+    public void findByIdRemembersMissingFunkosUntilSaved() throws SQLException, IOException {
+
+        Funko funko = funkos.get(0);
+        AtomicInteger queries = new AtomicInteger();
+        when(funkosReactiveRepo.findById(funko.codigo())).thenReturn(Mono.fromCallable(() -> {
+            queries.incrementAndGet();
+            return null;
+        }));
+        when(funkosCache.get(funko.codigo())).thenReturn(Mono.empty());
+        when(funkosReactiveRepo.save(funko)).thenReturn(Mono.just(funko));
+
+        assertThrows(FunkoNoEncontrado.class, () -> funkoService.findById(funko.codigo()).block());
+        assertThrows(FunkoNoEncontrado.class, () -> funkoService.findById(funko.codigo()).block());
+        assertEquals(1, queries.get());
+
+        funkoService.save(funko).block();
+
+        assertThrows(FunkoNoEncontrado.class, () -> funkoService.findById(funko.codigo()).block());
+        assertAll(
+                () -> assertEquals(2, queries.get()),
+                () -> assertEquals(1, funkoService.getMissingHits())
+        );
+
+    }
+
+    @Test
+    public void findAllByIdQueriesOnlyMisses() throws SQLException, IOException {
+
+        UUID missing = UUID.randomUUID();
+        List<UUID> misses = List.of(funkos.get(1).codigo(), missing);
+        when(funkosCache.get(any(UUID.class))).thenReturn(Mono.empty());
+        when(funkosCache.get(funkos.get(0).codigo())).thenReturn(Mono.just(funkos.get(0)));
+        when(funkosReactiveRepo.findAllById(misses)).thenReturn(Flux.just(funkos.get(1)));
+
+        List<Funko> found = funkoService.findAllById(List.of(funkos.get(1).codigo(), funkos.get(0).codigo(), missing, funkos.get(1).codigo()))
+                .collectList().block();
+
+        assertEquals(List.of(funkos.get(1), funkos.get(0)), found);
+        verify(funkosReactiveRepo, times(1)).findAllById(misses);
+        verify(funkosReactiveRepo, never()).findById(any(UUID.class));
+        verify(funkosCache, times(1)).putIfCurrent(eq(funkos.get(1).codigo()), eq(funkos.get(1)), anyLong());
+
+    }
+
     @Test
     public void save() throws SQLException, IOException {
 
@@ -130,6 +233,7 @@ public class FunkoServiceImplTest {
         });
 
         verify(funkosReactiveRepo, times(1)).update(any(Funko.class));
+        verify(funkosCache, times(1)).writeThrough(funkos.get(0).codigo(), funkos.get(0));
 
     }
 
@@ -173,6 +277,8 @@ public class FunkoServiceImplTest {
             assertTrue(funkoService.delete(funkos.get(0)).block());
         });
 
+        verify(funkosCache, times(1)).invalidate(funkos.get(0).codigo());
+
         verify(funkosReactiveRepo, times(1)).delete(any(UUID.class));
 
     }
@@ -209,13 +315,14 @@ public class FunkoServiceImplTest {
     @Test
     public void releaseInTest() throws SQLException, IOException {
 
-        when(funkosReactiveRepo.findAll()).thenReturn(Flux.fromIterable(funkos));
+        when(funkosReactiveRepo.findByReleaseYear(2020)).thenReturn(Flux.just(funkos.get(1), funkos.get(2)));
 
         assertAll(() -> {
             assertEquals(2, funkoService.releasedIn(2020).collectList().block().size());
         });
 
-        verify(funkosReactiveRepo, times(1)).findAll();
+        verify(funkosReactiveRepo, times(1)).findByReleaseYear(2020);
+        verify(funkosReactiveRepo, never()).findAll();
 
 
     }
@@ -234,14 +341,171 @@ public class FunkoServiceImplTest {
 
     }
 
+    @Test
+    public void databaseModeAlwaysFiltersInTheDatabase() throws SQLException, IOException {
+
+        when(funkosReactiveRepo.findByModelo(Modelo.OTROS)).thenReturn(Flux.just(funkos.get(0), funkos.get(1)));
+        when(funkosReactiveRepo.findByReleaseYear(2020)).thenReturn(Flux.just(funkos.get(1), funkos.get(2)));
+
+        funkoService.buildIndexes().block();
+
+        assertAll(
+                () -> assertEquals(2, funkoService.findByModelo(Modelo.OTROS).collectList().block().size()),
+                () -> assertEquals(2, funkoService.releasedIn(2020).collectList().block().size())
+        );
+        verify(funkosReactiveRepo, never()).findAll();
+
+    }
+
+    @Test
+    public void findByModeloUsesIndexesOnceBuilt() throws SQLException, IOException {
+
+        FunkoServiceImpl indexedService = new FunkoServiceImpl(funkosReactiveRepo, funkosCache, FunkoServiceImpl.ReadMode.INDEXED);
+        when(funkosReactiveRepo.findByModelo(Modelo.OTROS)).thenReturn(Flux.just(funkos.get(0), funkos.get(1)));
+        when(funkosReactiveRepo.findAll()).thenReturn(Flux.fromIterable(funkos));
+
+        assertEquals(2, indexedService.findByModelo(Modelo.OTROS).collectList().block().size());
+        indexedService.buildIndexes().block();
+        assertEquals(2, indexedService.findByModelo(Modelo.OTROS).collectList().block().size());
+
+        verify(funkosReactiveRepo, times(1)).findByModelo(Modelo.OTROS);
+        verify(funkosReactiveRepo, times(1)).findAll();
+
+    }
+
+    @Test
+    public void indexesFollowWrites() throws SQLException, IOException {
+
+        FunkoServiceImpl indexedService = new FunkoServiceImpl(funkosReactiveRepo, funkosCache, FunkoServiceImpl.ReadMode.INDEXED);
+        Funko moved = new Funko(funkos.get(1).codigo(), "Funko 3", Modelo.MARVEL, 10, LocalDate.of(2021, 1, 1));
+        when(funkosReactiveRepo.findAll()).thenReturn(Flux.fromIterable(funkos));
+        when(funkosReactiveRepo.findById(any(UUID.class))).thenReturn(Mono.just(funkos.get(1)));
+        when(funkosCache.get(any(UUID.class))).thenReturn(Mono.just(funkos.get(1)));
+        when(funkosReactiveRepo.update(any(Funko.class))).thenReturn(Mono.just(moved));
+        when(funkosReactiveRepo.delete(any(UUID.class))).thenReturn(Mono.just(true));
+
+        assertEquals(1, indexedService.groupedByModel().block().get(Modelo.MARVEL).size());
+
+        indexedService.update(moved).block();
+        indexedService.delete(funkos.get(2)).block();
+
+        assertAll(
+                () -> assertEquals(List.of(moved), indexedService.findByModelo(Modelo.MARVEL).collectList().block()),
+                () -> assertEquals(List.of(funkos.get(0)), indexedService.findByModelo(Modelo.OTROS).collectList().block()),
+                () -> assertEquals(List.of(moved), indexedService.releasedIn(2021).collectList().block()),
+                () -> assertTrue(indexedService.releasedIn(2020).collectList().block().isEmpty())
+        );
+
+        verify(funkosReactiveRepo, times(1)).findAll();
+
+    }
+
+    @Test
+    public void snapshotServesReadsFromMemory() throws SQLException, IOException {
+
+        FunkoServiceImpl snapshotService = new FunkoServiceImpl(funkosReactiveRepo, funkosCache, FunkoServiceImpl.ReadMode.SNAPSHOT);
+        Funko added = new Funko(UUID.randomUUID(), "Funko 5", Modelo.DISNEY, 15, LocalDate.of(2021, 1, 1));
+        when(funkosReactiveRepo.findAll()).thenReturn(Flux.fromIterable(funkos));
+        when(funkosReactiveRepo.save(any(Funko.class))).thenReturn(Mono.just(added));
+
+        assertEquals(funkos, snapshotService.findAll().collectList().block());
+
+        snapshotService.save(added).block();
+
+        assertAll(
+                () -> assertEquals(4, snapshotService.findAll().collectList().block().size()),
+                () -> assertEquals(added, snapshotService.findById(added.codigo()).block()),
+                () -> assertEquals(List.of(added), snapshotService.releasedIn(2021).collectList().block()),
+                () -> assertThrows(FunkoNoEncontrado.class, () -> snapshotService.findById(UUID.randomUUID()).block())
+        );
+
+        verify(funkosReactiveRepo, times(1)).findAll();
+        verify(funkosReactiveRepo, never()).findById(any(UUID.class));
+        verifyNoInteractions(funkosCache);
+
+    }
+
+    @Test
+    public void updateAllWritesThroughOnlyWrittenFunkos() {
+        Funko updated = new Funko(funkos.get(0).codigo(), "Actualizado", Modelo.ANIME, 99.0, LocalDate.of(2024, 1, 1));
+        Funko missing = new Funko(UUID.randomUUID(), "No existe", Modelo.OTROS, 1.0, LocalDate.of(2024, 1, 1));
+        when(funkosReactiveRepo.updateAll(any())).thenReturn(Flux.just(
+                WriteResult.written(updated), WriteResult.failed(missing, "Funko con id " + missing.codigo() + " no encontrado")));
+
+        BulkWriteSummary summary = BulkWriteSummary.of(funkoService.updateAll(Flux.just(updated, missing)).collectList().block());
+
+        assertAll(
+                () -> assertEquals(1, summary.written()),
+                () -> assertEquals(List.of(new BulkWriteSummary.Failure(1, missing.codigo(), "Funko con id " + missing.codigo() + " no encontrado")), summary.failures())
+        );
+        verify(funkosCache).writeThrough(updated.codigo(), updated);
+        verify(funkosCache, never()).writeThrough(eq(missing.codigo()), any());
+    }
+
+    @Test
+    public void saveAllAddsOnlyWrittenFunkosToTheSnapshot() throws SQLException, IOException {
+        FunkoServiceImpl snapshotService = new FunkoServiceImpl(funkosReactiveRepo, funkosCache, FunkoServiceImpl.ReadMode.SNAPSHOT);
+        Funko first = new Funko(UUID.randomUUID(), "Funko 5", Modelo.DISNEY, 15, LocalDate.of(2021, 1, 1));
+        Funko second = new Funko(UUID.randomUUID(), "Funko 6", Modelo.DISNEY, 16, LocalDate.of(2021, 1, 1));
+        Funko duplicated = new Funko(funkos.get(0).codigo(), "Repetido", Modelo.OTROS, 1.0, LocalDate.of(2021, 1, 1));
+        when(funkosReactiveRepo.findAll()).thenReturn(Flux.fromIterable(funkos));
+        when(funkosReactiveRepo.saveAll(any())).thenReturn(Flux.just(
+                WriteResult.written(first), WriteResult.failed(duplicated, "Duplicado"), WriteResult.written(second)));
+        snapshotService.findAll().collectList().block();
+
+        List<WriteResult<Funko>> results = snapshotService.saveAll(Flux.just(first, duplicated, second)).collectList().block();
+
+        assertAll(
+                () -> assertEquals(3, results.size()),
+                () -> assertEquals(List.of(first, second), snapshotService.releasedIn(2021).collectList().block()),
+                () -> assertEquals(funkos.get(0), snapshotService.findById(funkos.get(0).codigo()).block()),
+                () -> assertEquals(5, snapshotService.findAll().collectList().block().size())
+        );
+    }
+
+    @Test
+    public void findPageLimitsPageSize() {
+        Page<Funko> page = new Page<>(funkos, null);
+        when(funkosReactiveRepo.findPage(any(), anyInt())).thenReturn(Mono.just(page));
+
+        assertAll(
+                () -> assertEquals(page, funkoService.findPage(null, 0).block()),
+                () -> assertEquals(page, funkoService.findPage("token", 1_000_000).block())
+        );
+        verify(funkosReactiveRepo).findPage(null, 100);
+        verify(funkosReactiveRepo).findPage("token", 1000);
+    }
+
     @Test
     public void importCSVTest() throws IOException, SQLException {
 
-        when(funkosReactiveRepo.save(any(Funko.class))).thenReturn(Mono.just(funkos.get(0)));
+        when(funkosReactiveRepo.saveBatch(anyList())).thenAnswer(invocation -> Mono.just((long) invocation.<List<Funko>>getArgument(0).size()));
+
+        ImportReport report = funkoService.importCsv().block();
 
-        funkoService.importCsv().block();
+        assertAll(
+                () -> assertEquals(53, report.imported()),
+                () -> assertEquals(37, report.rejected())
+        );
+        verify(funkosReactiveRepo, times(1)).saveBatch(anyList());
+        verify(funkosReactiveRepo, never()).save(any(Funko.class));
+    }
 
-        verify(funkosReactiveRepo, times(90)).save(any(Funko.class));
+    @Test
+    public void importCsvSavesRowByRowWhenBatchFails() throws IOException, SQLException {
+        when(funkosReactiveRepo.saveBatch(anyList())).thenReturn(Mono.error(new RuntimeException("cod duplicado")));
+        AtomicInteger saves = new AtomicInteger();
+        when(funkosReactiveRepo.save(any(Funko.class))).thenAnswer(invocation -> saves.incrementAndGet() % 2 == 0
+                ? Mono.error(new RuntimeException("cod duplicado"))
+                : Mono.just(invocation.getArgument(0)));
+
+        ImportReport report = funkoService.importCsv().block();
+
+        assertAll(
+                () -> assertEquals(27, report.imported()),
+                () -> assertEquals(37 + 26, report.rejected())
+        );
+        verify(funkosReactiveRepo, times(53)).save(any(Funko.class));
 
     }
 
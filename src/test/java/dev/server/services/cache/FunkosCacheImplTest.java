@@ -6,8 +6,12 @@ import dev.server.database.models.Modelo;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
 import java.time.LocalDate;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -53,4 +57,159 @@ class FunkosCacheImplTest {
         funkosCache.clear();
         assertEquals(0, funkosCache.size());
     }
-}
\ No newline at end of file
+
+    @Test
+    void hitsAndMisses() {
+        Funko funko = new Funko(UUID.randomUUID(), "Funko", Modelo.OTROS, 10, LocalDate.now());
+        funkosCache.put(funko.codigo(), funko).block();
+        funkosCache.get(funko.codigo()).block();
+        funkosCache.get(UUID.randomUUID()).block();
+        assertAll(
+                () -> assertEquals(1, funkosCache.getHits()),
+                () -> assertEquals(1, funkosCache.getMisses())
+        );
+    }
+
+    @Test
+    void expiresAfterAccess() {
+        AtomicLong ticker = new AtomicLong();
+        FunkosCacheImpl expiring = new FunkosCacheImpl(15, new ExpiryPolicy(Duration.ZERO, Duration.ofSeconds(10), Duration.ZERO), null, ticker::get);
+        Funko funko = new Funko(UUID.randomUUID(), "Funko", Modelo.OTROS, 10, LocalDate.now());
+        expiring.put(funko.codigo(), funko).block();
+
+        ticker.addAndGet(Duration.ofSeconds(5).toNanos());
+        assertEquals(funko, expiring.get(funko.codigo()).block());
+
+        ticker.addAndGet(Duration.ofSeconds(11).toNanos());
+        assertAll(
+                () -> assertNull(expiring.get(funko.codigo()).block()),
+                () -> assertEquals(0, expiring.size())
+        );
+        expiring.shutdown();
+    }
+
+    @Test
+    void expiredReadKeepsAWriteThatLandsBeforeTheEviction() {
+        AtomicLong ticker = new AtomicLong();
+        UUID id = UUID.randomUUID();
+        Funko old = new Funko(id, "Funko", Modelo.OTROS, 10, LocalDate.now());
+        Funko newer = new Funko(id, "Funko nuevo", Modelo.OTROS, 20, LocalDate.now());
+        // Simula una escritura que llega justo después de leer la entrada caducada
+        FunkosCacheImpl racing = new FunkosCacheImpl(15, new ExpiryPolicy(Duration.ofSeconds(10), Duration.ZERO, Duration.ZERO), null, ticker::get) {
+            private boolean raced;
+
+            @Override
+            protected CacheEntry read(UUID key) {
+                CacheEntry entry = super.read(key);
+                if (!raced && entry != null) {
+                    raced = true;
+                    writeThrough(key, newer);
+                }
+                return entry;
+            }
+        };
+        racing.put(id, old).block();
+        ticker.addAndGet(Duration.ofSeconds(11).toNanos());
+
+        assertNull(racing.get(id).block());
+        assertAll(
+                () -> assertEquals(newer, racing.get(id).block()),
+                () -> assertEquals(0, racing.stats().expirations())
+        );
+        racing.shutdown();
+    }
+
+    @Test
+    void expireEntriesRemovesOnlyExpired() {
+        AtomicLong ticker = new AtomicLong();
+        FunkosCacheImpl expiring = new FunkosCacheImpl(15, new ExpiryPolicy(Duration.ofSeconds(10), Duration.ZERO, Duration.ZERO), null, ticker::get);
+        Funko old = new Funko(UUID.randomUUID(), "Funko", Modelo.OTROS, 10, LocalDate.now());
+        Funko recent = new Funko(UUID.randomUUID(), "Funko", Modelo.OTROS, 10, LocalDate.now());
+        expiring.put(old.codigo(), old).block();
+        ticker.addAndGet(Duration.ofSeconds(8).toNanos());
+        expiring.put(recent.codigo(), recent).block();
+
+        ticker.addAndGet(Duration.ofSeconds(3).toNanos());
+        expiring.expireEntries(ticker.get());
+
+        assertAll(
+                () -> assertEquals(1, expiring.size()),
+                () -> assertEquals(recent, expiring.get(recent.codigo()).block())
+        );
+        expiring.shutdown();
+    }
+
+    @Test
+    void refreshesAheadOfExpiry() {
+        AtomicLong ticker = new AtomicLong();
+        Funko funko = new Funko(UUID.randomUUID(), "Funko", Modelo.OTROS, 10, LocalDate.now());
+        Funko reloaded = new Funko(funko.codigo(), "Funko recargado", Modelo.OTROS, 20, LocalDate.now());
+        FunkosCacheImpl refreshing = new FunkosCacheImpl(15, new ExpiryPolicy(Duration.ofSeconds(10), Duration.ZERO, Duration.ofSeconds(5)),
+                id -> Mono.just(reloaded), ticker::get);
+        refreshing.put(funko.codigo(), funko).block();
+
+        ticker.addAndGet(Duration.ofSeconds(6).toNanos());
+        assertEquals(funko, refreshing.get(funko.codigo()).block());
+
+        ticker.addAndGet(Duration.ofSeconds(6).toNanos());
+        assertEquals(reloaded, refreshing.get(funko.codigo()).block());
+        refreshing.shutdown();
+    }
+
+    @Test
+    void statsCountLoadsEvictionsAndExpirations() {
+        AtomicLong ticker = new AtomicLong();
+        Funko funko = new Funko(UUID.randomUUID(), "Funko", Modelo.OTROS, 10, LocalDate.now());
+        FunkosCacheImpl counted = new FunkosCacheImpl(2, new ExpiryPolicy(Duration.ofSeconds(10), Duration.ZERO, Duration.ofSeconds(5)),
+                id -> Mono.just(funko), ticker::get);
+        counted.put(funko.codigo(), funko).block();
+        for (int i = 0; i < 2; i++) {
+            UUID id = UUID.randomUUID();
+            counted.put(id, new Funko(id, "Funko " + i, Modelo.OTROS, 10, LocalDate.now())).block();
+        }
+        counted.put(funko.codigo(), funko).block();
+
+        ticker.addAndGet(Duration.ofSeconds(6).toNanos());
+        counted.get(funko.codigo()).block();
+        ticker.addAndGet(Duration.ofSeconds(6).toNanos());
+        counted.expireEntries(ticker.get());
+
+        CacheStats stats = counted.stats();
+        assertAll(
+                () -> assertEquals(1, stats.hits()),
+                () -> assertEquals(1, stats.loadSuccesses()),
+                () -> assertEquals(2, stats.evictions()),
+                () -> assertEquals(1, stats.expirations()),
+                () -> assertEquals(1, stats.size())
+        );
+        counted.shutdown();
+    }
+
+    @Test
+    void discardsLoadsOlderThanAWrite() {
+        Funko loaded = new Funko(UUID.randomUUID(), "Funko", Modelo.OTROS, 10, LocalDate.now());
+        Funko updated = new Funko(loaded.codigo(), "Funko actualizado", Modelo.OTROS, 20, LocalDate.now());
+
+        long version = funkosCache.version(loaded.codigo());
+        funkosCache.writeThrough(updated.codigo(), updated);
+
+        assertAll(
+                () -> assertFalse(funkosCache.putIfCurrent(loaded.codigo(), loaded, version)),
+                () -> assertEquals(updated, funkosCache.get(loaded.codigo()).block())
+        );
+    }
+
+    @Test
+    void invalidateDiscardsPendingLoads() {
+        Funko funko = new Funko(UUID.randomUUID(), "Funko", Modelo.OTROS, 10, LocalDate.now());
+
+        long version = funkosCache.version(funko.codigo());
+        funkosCache.invalidate(funko.codigo());
+
+        assertAll(
+                () -> assertFalse(funkosCache.putIfCurrent(funko.codigo(), funko, version)),
+                () -> assertTrue(funkosCache.putIfCurrent(funko.codigo(), funko, funkosCache.version(funko.codigo()))),
+                () -> assertEquals(funko, funkosCache.get(funko.codigo()).block())
+        );
+    }
+}
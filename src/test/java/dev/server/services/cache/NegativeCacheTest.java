@@ -0,0 +1,50 @@
+package dev.server.services.cache;
+
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NegativeCacheTest {
+
+    @Test
+    void neverExceedsMaxSize() {
+        NegativeCache missing = new NegativeCache(4, Duration.ofSeconds(60));
+        for (int i = 0; i < 50; i++) {
+            missing.putIfCurrent(UUID.randomUUID(), missing.version());
+        }
+        assertEquals(4, missing.size());
+    }
+
+    @Test
+    void expiresAfterTtl() {
+        AtomicLong ticker = new AtomicLong();
+        NegativeCache missing = new NegativeCache(4, Duration.ofSeconds(10), ticker::get);
+        UUID id = UUID.randomUUID();
+        missing.putIfCurrent(id, missing.version());
+
+        assertTrue(missing.contains(id));
+        ticker.addAndGet(Duration.ofSeconds(10).toNanos());
+        assertAll(
+                () -> assertFalse(missing.contains(id)),
+                () -> assertEquals(0, missing.size())
+        );
+    }
+
+    @Test
+    void discardsLookupsOlderThanAnInvalidation() {
+        NegativeCache missing = new NegativeCache(4, Duration.ofSeconds(60));
+        UUID id = UUID.randomUUID();
+        long version = missing.version();
+        missing.invalidate(id);
+
+        assertAll(
+                () -> assertFalse(missing.putIfCurrent(id, version)),
+                () -> assertFalse(missing.contains(id))
+        );
+    }
+}
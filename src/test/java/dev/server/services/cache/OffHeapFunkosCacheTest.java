@@ -0,0 +1,133 @@
+package dev.server.services.cache;
+
+
+import dev.common.models.Funko;
+import dev.server.database.models.Modelo;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OffHeapFunkosCacheTest {
+    private OffHeapFunkosCache funkosCache;
+
+    @BeforeEach
+    void setUp() {
+        funkosCache = new OffHeapFunkosCache(64);
+    }
+
+    @AfterEach
+    void tearDown() {
+        funkosCache.shutdown();
+    }
+
+    private Funko funko(String nombre) {
+        return new Funko(UUID.randomUUID(), nombre, Modelo.ANIME, 19.99, LocalDate.of(2022, 5, 1));
+    }
+
+    @Test
+    void get() {
+        Funko funko = funko("Pikachú ⚡");
+        funkosCache.put(funko.codigo(), funko).block();
+        assertAll(
+                () -> assertEquals(funko, funkosCache.get(funko.codigo()).block()),
+                () -> assertNull(funkosCache.get(UUID.randomUUID()).block()),
+                () -> assertEquals(1, funkosCache.getHits()),
+                () -> assertEquals(1, funkosCache.getMisses())
+        );
+    }
+
+    @Test
+    void removeKeepsTheRestReachable() {
+        List<Funko> funkos = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            Funko funko = funko("Funko " + i);
+            funkos.add(funko);
+            funkosCache.put(funko.codigo(), funko).block();
+        }
+        for (int i = 0; i < 64; i += 2) {
+            funkosCache.remove(funkos.get(i).codigo()).block();
+        }
+
+        assertEquals(32, funkosCache.size());
+        for (int i = 0; i < 64; i++) {
+            assertEquals(i % 2 == 0 ? null : funkos.get(i), funkosCache.get(funkos.get(i).codigo()).block());
+        }
+    }
+
+    @Test
+    void neverExceedsCapacity() {
+        OffHeapFunkosCache small = new OffHeapFunkosCache(4);
+        for (int i = 0; i < 50; i++) {
+            Funko funko = funko("Funko " + i);
+            small.put(funko.codigo(), funko).block();
+        }
+        assertEquals(4, small.size());
+        small.shutdown();
+    }
+
+    @Test
+    void evictionsKeepEverySurvivorReadable() {
+        OffHeapFunkosCache small = new OffHeapFunkosCache(16);
+        List<Funko> funkos = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            Funko funko = funko("Funko " + i);
+            funkos.add(funko);
+            small.put(funko.codigo(), funko).block();
+        }
+
+        int found = 0;
+        for (Funko funko : funkos) {
+            Funko cached = small.get(funko.codigo()).block();
+            if (cached != null) {
+                assertEquals(funko, cached);
+                found++;
+            }
+        }
+        assertEquals(16, found);
+        small.shutdown();
+    }
+
+    @Test
+    void overwritesReuseNameSpace() {
+        UUID id = UUID.randomUUID();
+        for (int i = 0; i < 10_000; i++) {
+            Funko funko = new Funko(id, "Funko con un nombre bastante largo " + i, Modelo.DISNEY, i, LocalDate.of(2021, 1, 1));
+            funkosCache.put(id, funko).block();
+        }
+        assertAll(
+                () -> assertEquals(1, funkosCache.size()),
+                () -> assertEquals("Funko con un nombre bastante largo 9999", funkosCache.get(id).block().nombre())
+        );
+    }
+
+    @Test
+    void expireEntriesRemovesOnlyExpired() {
+        AtomicLong ticker = new AtomicLong();
+        OffHeapFunkosCache expiring = new OffHeapFunkosCache(4, new ExpiryPolicy(Duration.ofSeconds(10), Duration.ZERO, Duration.ZERO), null, ticker::get);
+        Funko old1 = funko("Old 1");
+        Funko old2 = funko("Old 2");
+        Funko recent = funko("Recent");
+        expiring.put(old1.codigo(), old1).block();
+        expiring.put(old2.codigo(), old2).block();
+        ticker.addAndGet(Duration.ofSeconds(8).toNanos());
+        expiring.put(recent.codigo(), recent).block();
+
+        ticker.addAndGet(Duration.ofSeconds(3).toNanos());
+        expiring.expireEntries(ticker.get());
+
+        assertAll(
+                () -> assertEquals(1, expiring.size()),
+                () -> assertEquals(recent, expiring.get(recent.codigo()).block())
+        );
+        expiring.shutdown();
+    }
+}
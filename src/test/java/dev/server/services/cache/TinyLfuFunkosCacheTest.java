@@ -0,0 +1,105 @@
+package dev.server.services.cache;
+
+
+import dev.common.models.Funko;
+import dev.server.database.models.Modelo;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TinyLfuFunkosCacheTest {
+    private TinyLfuFunkosCache funkosCache;
+
+    @BeforeEach
+    void setUp() {
+        funkosCache = new TinyLfuFunkosCache(4);
+    }
+
+    @AfterEach
+    void tearDown() {
+        funkosCache.shutdown();
+    }
+
+    private Funko funko() {
+        return new Funko(UUID.randomUUID(), "Funko", Modelo.OTROS, 10, LocalDate.now());
+    }
+
+    @Test
+    void get() {
+        Funko funko = funko();
+        funkosCache.put(funko.codigo(), funko).block();
+        assertAll(
+                () -> assertEquals(funko, funkosCache.get(funko.codigo()).block()),
+                () -> assertNull(funkosCache.get(UUID.randomUUID()).block()),
+                () -> assertEquals(1, funkosCache.getHits()),
+                () -> assertEquals(1, funkosCache.getMisses())
+        );
+    }
+
+    @Test
+    void remove() {
+        Funko funko = funko();
+        funkosCache.put(funko.codigo(), funko).block();
+        funkosCache.remove(funko.codigo()).block();
+        assertEquals(0, funkosCache.size());
+    }
+
+    @Test
+    void neverExceedsCapacity() {
+        for (int i = 0; i < 50; i++) {
+            Funko funko = funko();
+            funkosCache.put(funko.codigo(), funko).block();
+        }
+        assertEquals(4, funkosCache.size());
+    }
+
+    @Test
+    void keepsFrequentFunkos() {
+        Funko frequent = funko();
+        funkosCache.put(frequent.codigo(), frequent).block();
+        for (int i = 0; i < 10; i++) {
+            funkosCache.get(frequent.codigo()).block();
+        }
+
+        for (int i = 0; i < 50; i++) {
+            Funko oneHit = funko();
+            funkosCache.put(oneHit.codigo(), oneHit).block();
+        }
+
+        assertEquals(frequent, funkosCache.get(frequent.codigo()).block());
+    }
+
+    @Test
+    void rejectsZeroCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> new TinyLfuFunkosCache(0));
+    }
+
+    @Test
+    void expireEntriesRemovesOnlyExpired() {
+        AtomicLong ticker = new AtomicLong();
+        TinyLfuFunkosCache expiring = new TinyLfuFunkosCache(4, new ExpiryPolicy(Duration.ofSeconds(10), Duration.ZERO, Duration.ZERO), null, ticker::get);
+        Funko old1 = funko();
+        Funko old2 = funko();
+        Funko recent = funko();
+        expiring.put(old1.codigo(), old1).block();
+        expiring.put(old2.codigo(), old2).block();
+        ticker.addAndGet(Duration.ofSeconds(8).toNanos());
+        expiring.put(recent.codigo(), recent).block();
+
+        ticker.addAndGet(Duration.ofSeconds(3).toNanos());
+        expiring.expireEntries(ticker.get());
+
+        assertAll(
+                () -> assertEquals(1, expiring.size()),
+                () -> assertEquals(recent, expiring.get(recent.codigo()).block())
+        );
+        expiring.shutdown();
+    }
+}